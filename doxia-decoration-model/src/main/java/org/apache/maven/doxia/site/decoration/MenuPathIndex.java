@@ -0,0 +1,226 @@
+package org.apache.maven.doxia.site.decoration;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable index of the menu items and links of a decoration model body by normalized href: for every href, the
+ * items linking to it and their ancestors (menu items and menu) are known, so that templates can find if an item
+ * is the current page, or contains it, without walking the menu tree.
+ * <p>
+ * Hrefs of the items are relative to the site root, and the current page file name is relative to the relative path
+ * of the current page: both are normalized to a path from the site root, with slashes and without <code>.</code>
+ * segments nor <code>..</code> segments following a directory. A link to a parent site, like
+ * <code>../index.html</code>, keeps its leading <code>..</code> segments: it never matches a page of the site.
+ * Absolute links are kept as is.
+ * </p>
+ *
+ * @see DecorationModel#getMenuPathIndex()
+ * @since 1.9.3
+ */
+public class MenuPathIndex
+{
+    private final Body body;
+
+    /**
+     * Normalized href of every indexed item.
+     */
+    private final Map<Object, String> hrefs = new IdentityHashMap<Object, String>();
+
+    /**
+     * Items linking to every normalized href, and their ancestors.
+     */
+    private final Map<String, Set<Object>> paths = new HashMap<String, Set<Object>>();
+
+    /**
+     * Ancestor chain of the first item linking to every normalized href, from the menu to the item.
+     */
+    private final Map<String, List<Object>> firstPaths = new HashMap<String, List<Object>>();
+
+    /**
+     * @param body the decoration model body to index, may be <code>null</code>
+     */
+    public MenuPathIndex( Body body )
+    {
+        this.body = body;
+
+        if ( body == null )
+        {
+            return;
+        }
+
+        List<Object> chain = new ArrayList<Object>();
+        for ( Menu menu : body.getMenus() )
+        {
+            chain.add( menu );
+            index( menu.getItems(), chain );
+            chain.remove( chain.size() - 1 );
+        }
+        index( body.getLinks(), chain );
+        index( body.getBreadcrumbs(), chain );
+    }
+
+    private void index( List<? extends LinkItem> items, List<Object> chain )
+    {
+        for ( LinkItem item : items )
+        {
+            chain.add( item );
+
+            String href = normalize( null, item.getHref() );
+            hrefs.put( item, href );
+
+            Set<Object> path = paths.get( href );
+            if ( path == null )
+            {
+                path = Collections.newSetFromMap( new IdentityHashMap<Object, Boolean>() );
+                paths.put( href, path );
+                firstPaths.put( href, Collections.unmodifiableList( new ArrayList<Object>( chain ) ) );
+            }
+            path.addAll( chain );
+
+            if ( item instanceof MenuItem )
+            {
+                index( ( (MenuItem) item ).getItems(), chain );
+            }
+
+            chain.remove( chain.size() - 1 );
+        }
+    }
+
+    /**
+     * @param body a decoration model body
+     * @return <code>true</code> if this index was built from this body instance
+     */
+    boolean isIndexOf( Body body )
+    {
+        return this.body == body;
+    }
+
+    /**
+     * @param item a menu item or link of the indexed body
+     * @param relativePath the relative path of the current page to the site root
+     * @param alignedFileName the current page file name, relative to the relative path
+     * @return <code>true</code> if the item links to the current page
+     */
+    public boolean isActive( LinkItem item, String relativePath, String alignedFileName )
+    {
+        String href = hrefs.get( item );
+        return href != null && href.equals( normalize( relativePath, alignedFileName ) );
+    }
+
+    /**
+     * @param item a menu, menu item or link of the indexed body
+     * @param relativePath the relative path of the current page to the site root
+     * @param alignedFileName the current page file name, relative to the relative path
+     * @return <code>true</code> if the item, or one of its descendants, links to the current page
+     */
+    public boolean isExpanded( Object item, String relativePath, String alignedFileName )
+    {
+        Set<Object> path = paths.get( normalize( relativePath, alignedFileName ) );
+        return path != null && path.contains( item );
+    }
+
+    /**
+     * @param relativePath the relative path of the current page to the site root
+     * @param alignedFileName the current page file name, relative to the relative path
+     * @return the ancestor chain of the first item linking to the current page, from its menu to the item itself,
+     *         or an empty list if no item links to the current page
+     */
+    public List<Object> getMenuPath( String relativePath, String alignedFileName )
+    {
+        List<Object> path = firstPaths.get( normalize( relativePath, alignedFileName ) );
+        return ( path == null ) ? Collections.<Object>emptyList() : path;
+    }
+
+    /**
+     * @param relativePath the relative path of the href to the site root, or <code>null</code> for the site root
+     * @param href a href, relative to the relative path
+     * @return the path of the href from the site root
+     */
+    static String normalize( String relativePath, String href )
+    {
+        if ( href == null || DecorationUtils.isLink( href ) )
+        {
+            return href;
+        }
+
+        String path = href.replace( '\\', '/' );
+        while ( path.startsWith( "/" ) )
+        {
+            path = path.substring( 1 );
+        }
+
+        if ( relativePath != null )
+        {
+            String prefix = relativePath.replace( '\\', '/' );
+            if ( !prefix.endsWith( "/" ) )
+            {
+                prefix += '/';
+            }
+            if ( path.startsWith( prefix ) )
+            {
+                path = path.substring( prefix.length() );
+            }
+        }
+
+        List<String> segments = new ArrayList<String>();
+        int start = 0;
+        while ( start <= path.length() )
+        {
+            int end = path.indexOf( '/', start );
+            if ( end < 0 )
+            {
+                end = path.length();
+            }
+            String segment = path.substring( start, end );
+            start = end + 1;
+
+            if ( segment.equals( "." ) || ( segment.length() == 0 && start <= path.length() ) )
+            {
+                // current directory, or empty segment before a slash
+                continue;
+            }
+            if ( segment.equals( ".." ) && !segments.isEmpty() && !segments.get( segments.size() - 1 ).equals( ".." ) )
+            {
+                segments.remove( segments.size() - 1 );
+                continue;
+            }
+            segments.add( segment );
+        }
+
+        StringBuilder normalized = new StringBuilder( path.length() );
+        for ( String segment : segments )
+        {
+            if ( normalized.length() > 0 )
+            {
+                normalized.append( '/' );
+            }
+            normalized.append( segment );
+        }
+        return normalized.toString();
+    }
+}
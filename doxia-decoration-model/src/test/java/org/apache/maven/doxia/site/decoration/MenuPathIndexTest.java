@@ -0,0 +1,115 @@
+package org.apache.maven.doxia.site.decoration;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MenuPathIndexTest
+{
+    private static MenuItem item( String href )
+    {
+        MenuItem item = new MenuItem();
+        item.setHref( href );
+        return item;
+    }
+
+    @Test
+    public void testNormalize()
+    {
+        assertNull( MenuPathIndex.normalize( null, null ) );
+        assertEquals( "index.html", MenuPathIndex.normalize( null, "index.html" ) );
+        assertEquals( "index.html", MenuPathIndex.normalize( null, "./index.html" ) );
+        assertEquals( "index.html", MenuPathIndex.normalize( null, "guides/../index.html" ) );
+        assertEquals( "guides/intro.html", MenuPathIndex.normalize( null, "/guides\\intro.html" ) );
+        assertEquals( "../index.html", MenuPathIndex.normalize( null, "../index.html" ) );
+        assertEquals( "http://maven.apache.org/", MenuPathIndex.normalize( null, "http://maven.apache.org/" ) );
+
+        assertEquals( "index.html", MenuPathIndex.normalize( ".", "index.html" ) );
+        assertEquals( "guides/intro.html", MenuPathIndex.normalize( "../..", "../../guides/intro.html" ) );
+        assertEquals( "guides/intro.html", MenuPathIndex.normalize( "..\\..", "../../guides/./intro.html" ) );
+        assertEquals( "../parent/index.html", MenuPathIndex.normalize( "..", "../../parent/index.html" ) );
+    }
+
+    @Test
+    public void testActiveAndExpanded()
+    {
+        MenuItem home = item( "index.html" );
+        MenuItem guides = item( "guides/index.html" );
+        MenuItem intro = item( "guides/intro.html" );
+        guides.addItem( intro );
+
+        Menu menu = new Menu();
+        menu.addItem( home );
+        menu.addItem( guides );
+
+        DecorationModel decoration = new DecorationModel();
+        decoration.setBody( new Body() );
+        decoration.getBody().addMenu( menu );
+
+        // current page guides/intro.html, seen from a page in a sub-directory
+        String relativePath = "..";
+        String alignedFileName = "../guides/intro.html";
+
+        assertTrue( decoration.isActive( intro, relativePath, alignedFileName ) );
+        assertFalse( decoration.isActive( guides, relativePath, alignedFileName ) );
+
+        assertTrue( decoration.isExpanded( intro, relativePath, alignedFileName ) );
+        assertTrue( decoration.isExpanded( guides, relativePath, alignedFileName ) );
+        assertTrue( decoration.isExpanded( menu, relativePath, alignedFileName ) );
+        assertFalse( decoration.isExpanded( home, relativePath, alignedFileName ) );
+
+        assertEquals( Arrays.<Object>asList( menu, guides, intro ),
+                      decoration.getMenuPathIndex().getMenuPath( relativePath, alignedFileName ) );
+        assertTrue( decoration.getMenuPathIndex().getMenuPath( ".", "other.html" ).isEmpty() );
+
+        // a new body is indexed again
+        decoration.setBody( new Body() );
+        assertFalse( decoration.isExpanded( guides, relativePath, alignedFileName ) );
+    }
+
+    @Test
+    public void testParentLink()
+    {
+        MenuItem parent = item( "../index.html" );
+        MenuItem home = item( "index.html" );
+
+        Menu menu = new Menu();
+        menu.addItem( parent );
+        menu.addItem( home );
+
+        DecorationModel decoration = new DecorationModel();
+        decoration.setBody( new Body() );
+        decoration.getBody().addMenu( menu );
+
+        // the site index page is not the index page of the parent site
+        assertTrue( decoration.isActive( home, ".", "index.html" ) );
+        assertFalse( decoration.isActive( parent, ".", "index.html" ) );
+
+        // nor seen from a page in a sub-directory
+        assertTrue( decoration.isActive( home, "..", "../index.html" ) );
+        assertFalse( decoration.isActive( parent, "..", "../index.html" ) );
+        assertEquals( Arrays.<Object>asList( menu, home ),
+                      decoration.getMenuPathIndex().getMenuPath( "..", "../index.html" ) );
+    }
+}
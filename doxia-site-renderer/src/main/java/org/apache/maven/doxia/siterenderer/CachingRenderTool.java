@@ -0,0 +1,113 @@
+package org.apache.maven.doxia.siterenderer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.StringWriter;
+
+import org.apache.velocity.Template;
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.context.Context;
+import org.apache.velocity.runtime.RuntimeSingleton;
+import org.apache.velocity.runtime.parser.ParseException;
+import org.apache.velocity.tools.config.DefaultKey;
+import org.apache.velocity.tools.generic.RenderTool;
+import org.apache.velocity.tools.generic.ValueParser;
+
+/**
+ * <code>$render</code> tool evaluating templates parsed only once: snippets like <code>$decoration.body.head</code>,
+ * evaluated for every page, are parsed on first evaluation then only merged with the page context.
+ * Snippets that fail to parse are evaluated by {@link RenderTool}, for the same error reporting, and are not parsed
+ * again by this tool. Exceptions merging a parsed snippet are handled like {@link RenderTool} does: caught with
+ * <code>null</code> result by default, or thrown if the tool does not catch exceptions.
+ *
+ * @see EvalCache
+ * @since 1.9.3
+ */
+@DefaultKey( "render" )
+public class CachingRenderTool
+    extends RenderTool
+{
+    /**
+     * Tool property holding the {@link EvalCache} shared by the tools of a site.
+     */
+    static final String KEY_EVAL_CACHE = "evalCache";
+
+    private EvalCache evalCache;
+
+    private boolean customEngine;
+
+    @Override
+    protected void configure( ValueParser parser )
+    {
+        super.configure( parser );
+
+        Object cache = parser.getValue( KEY_EVAL_CACHE );
+        if ( cache instanceof EvalCache )
+        {
+            this.evalCache = (EvalCache) cache;
+        }
+    }
+
+    @Override
+    public void setVelocityEngine( VelocityEngine ve )
+    {
+        super.setVelocityEngine( ve );
+
+        // the engine runtime is not available to parse templates
+        this.customEngine = ve != null;
+    }
+
+    @Override
+    public String eval( Context ctx, String vtl )
+    {
+        if ( vtl == null || evalCache == null || customEngine || evalCache.isInvalid( vtl ) )
+        {
+            return super.eval( ctx, vtl );
+        }
+
+        Template template;
+        try
+        {
+            // same runtime as Velocity.evaluate(), used by RenderTool without engine
+            template = evalCache.getTemplate( RuntimeSingleton.getRuntimeServices(), vtl );
+        }
+        catch ( ParseException e )
+        {
+            return super.eval( ctx, vtl );
+        }
+
+        StringWriter sw = new StringWriter();
+        if ( !isCatchExceptions() )
+        {
+            template.merge( ctx, sw );
+            return sw.toString();
+        }
+
+        try
+        {
+            template.merge( ctx, sw );
+            return sw.toString();
+        }
+        catch ( Exception e )
+        {
+            return null;
+        }
+    }
+}
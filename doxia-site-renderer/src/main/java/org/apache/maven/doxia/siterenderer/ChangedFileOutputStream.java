@@ -0,0 +1,130 @@
+package org.apache.maven.doxia.siterenderer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Output stream buffering the content of a file, written on close only if it differs from the current content of
+ * the file: an unchanged file keeps its modification date.
+ *
+ * @since 1.9.3
+ */
+class ChangedFileOutputStream
+    extends ByteArrayOutputStream
+{
+    private final File file;
+
+    private boolean closed;
+
+    private boolean written;
+
+    /**
+     * @param file the file to write
+     */
+    ChangedFileOutputStream( File file )
+    {
+        super( 8192 );
+        this.file = file;
+    }
+
+    /**
+     * @return <code>true</code> if the file was written on close, <code>false</code> if its content was unchanged
+     */
+    boolean isWritten()
+    {
+        return written;
+    }
+
+    @Override
+    public void close()
+        throws IOException
+    {
+        if ( closed )
+        {
+            return;
+        }
+        closed = true;
+
+        if ( isUnchanged() )
+        {
+            return;
+        }
+
+        OutputStream out = new FileOutputStream( file );
+        try
+        {
+            writeTo( out );
+            out.close();
+            out = null;
+        }
+        finally
+        {
+            IOUtil.close( out );
+        }
+        written = true;
+    }
+
+    private boolean isUnchanged()
+        throws IOException
+    {
+        if ( !file.isFile() || file.length() != count )
+        {
+            return false;
+        }
+
+        InputStream in = new FileInputStream( file );
+        try
+        {
+            byte[] buffer = new byte[8192];
+            int offset = 0;
+            int n;
+            while ( ( n = in.read( buffer ) ) != -1 )
+            {
+                if ( offset + n > count )
+                {
+                    // the file grew while being read
+                    return false;
+                }
+                for ( int i = 0; i < n; i++ )
+                {
+                    if ( buffer[i] != buf[offset + i] )
+                    {
+                        return false;
+                    }
+                }
+                offset += n;
+            }
+            return offset == count;
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package org.apache.maven.doxia.siterenderer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * Bounded pipe between a thread writing characters and a thread reading them: the writer waits when the buffer is
+ * full, and the reader waits when it is empty, so the whole content is never buffered.
+ * Once the reader is closed, written characters are discarded. If the writer fails, the reader fails too.
+ *
+ * @since 1.9.3
+ */
+class CharPipe
+{
+    private final char[] buffer;
+
+    /**
+     * Index of the next character to read.
+     */
+    private int start;
+
+    /**
+     * Count of characters written but not read yet.
+     */
+    private int count;
+
+    private boolean writerClosed;
+
+    private boolean readerClosed;
+
+    private Throwable failure;
+
+    private final Reader reader = new PipeReader();
+
+    private final Writer writer = new PipeWriter();
+
+    /**
+     * @param capacity the count of characters that can be written before the writer waits for the reader
+     */
+    CharPipe( int capacity )
+    {
+        this.buffer = new char[capacity];
+    }
+
+    Reader getReader()
+    {
+        return reader;
+    }
+
+    Writer getWriter()
+    {
+        return writer;
+    }
+
+    /**
+     * Report a failure of the writer: the reader will fail with an <code>IOException</code> caused by it.
+     *
+     * @param cause the writer failure
+     */
+    synchronized void fail( Throwable cause )
+    {
+        failure = cause;
+        notifyAll();
+    }
+
+    private synchronized void write( char[] cbuf, int off, int len )
+        throws IOException
+    {
+        if ( writerClosed )
+        {
+            throw new IOException( "Pipe closed" );
+        }
+
+        while ( len > 0 )
+        {
+            while ( count == buffer.length && !readerClosed )
+            {
+                await();
+            }
+
+            if ( readerClosed )
+            {
+                // nobody will read
+                return;
+            }
+
+            int end = ( start + count ) % buffer.length;
+            int n = Math.min( len, Math.min( buffer.length - count, buffer.length - end ) );
+            System.arraycopy( cbuf, off, buffer, end, n );
+            off += n;
+            len -= n;
+
+            if ( count == 0 )
+            {
+                // the reader may be waiting for content
+                notifyAll();
+            }
+            count += n;
+        }
+    }
+
+    private synchronized int read( char[] cbuf, int off, int len )
+        throws IOException
+    {
+        if ( readerClosed )
+        {
+            throw new IOException( "Pipe closed" );
+        }
+
+        if ( len == 0 )
+        {
+            return 0;
+        }
+
+        while ( count == 0 && !writerClosed && failure == null )
+        {
+            await();
+        }
+
+        if ( failure != null )
+        {
+            throw new IOException( "Error writing to pipe: " + failure.getMessage(), failure );
+        }
+
+        if ( count == 0 )
+        {
+            return -1;
+        }
+
+        int n = Math.min( len, Math.min( count, buffer.length - start ) );
+        System.arraycopy( buffer, start, cbuf, off, n );
+        start = ( start + n ) % buffer.length;
+
+        if ( count == buffer.length )
+        {
+            // the writer may be waiting for space
+            notifyAll();
+        }
+        count -= n;
+
+        return n;
+    }
+
+    private synchronized void closeWriter()
+    {
+        writerClosed = true;
+        notifyAll();
+    }
+
+    private synchronized void closeReader()
+    {
+        readerClosed = true;
+        notifyAll();
+    }
+
+    private void await()
+        throws InterruptedIOException
+    {
+        try
+        {
+            wait();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "Interrupted while waiting for the other end of the pipe" );
+        }
+    }
+
+    private class PipeReader
+        extends Reader
+    {
+        @Override
+        public int read( char[] cbuf, int off, int len )
+            throws IOException
+        {
+            return CharPipe.this.read( cbuf, off, len );
+        }
+
+        @Override
+        public void close()
+        {
+            closeReader();
+        }
+    }
+
+    private class PipeWriter
+        extends Writer
+    {
+        @Override
+        public void write( char[] cbuf, int off, int len )
+            throws IOException
+        {
+            CharPipe.this.write( cbuf, off, len );
+        }
+
+        @Override
+        public void flush()
+        {
+            // nop
+        }
+
+        @Override
+        public void close()
+        {
+            closeWriter();
+        }
+    }
+}
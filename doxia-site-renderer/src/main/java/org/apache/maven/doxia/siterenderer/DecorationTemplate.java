@@ -0,0 +1,391 @@
+package org.apache.maven.doxia.siterenderer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.velocity.Template;
+import org.apache.velocity.app.event.EventCartridge;
+import org.apache.velocity.app.event.EventHandler;
+import org.apache.velocity.app.event.IncludeEventHandler;
+import org.apache.velocity.context.Context;
+import org.apache.velocity.context.InternalEventContext;
+import org.apache.velocity.exception.VelocityException;
+import org.apache.velocity.runtime.parser.node.ASTComment;
+import org.apache.velocity.runtime.parser.node.ASTDirective;
+import org.apache.velocity.runtime.parser.node.ASTStringLiteral;
+import org.apache.velocity.runtime.parser.node.ASTText;
+import org.apache.velocity.runtime.parser.node.Node;
+
+/**
+ * Velocity site decoration template, parsed once per site rendering context and merged with every document.
+ * <p>
+ * The parsed template may be shared through the Velocity resource cache, and is never modified. Macro libraries
+ * parsed by the template, that only define global macros, are parsed by the first merge only: next merges skip
+ * their <code>#parse</code> with an include event handler, as long as no other site decoration template of the same
+ * Velocity engine registered its own macro libraries in the meantime.
+ * </p>
+ * <p>
+ * Merges parsing macro libraries hold the write lock of the {@link MacroLibraryRegistration} of the engine, and merges
+ * skipping them its read lock: macros are never registered again by a template while another template relies on its
+ * own registered macros, with concurrent renderings.
+ * </p>
+ *
+ * @see VelocitySiteTemplateEngine
+ * @since 1.9.3
+ */
+class DecorationTemplate
+    implements SiteTemplate
+{
+    private final Template template;
+
+    private final ClassLoader templateClassLoader;
+
+    private final List<URL> resources;
+
+    private final boolean includingResources;
+
+    private final Set<String> libraries;
+
+    private final MacroLibraryRegistration registration;
+
+    /**
+     * @param template the parsed template
+     * @param templateClassLoader the classloader to look up resources included by the template, or
+     *            <code>null</code> to use the context classloader
+     * @param url the template location, or <code>null</code> if unknown
+     * @param libraries the names of the macro libraries parsed by the template, that only define macros
+     * @param libraryUrls the locations of the macro libraries
+     * @param registration the macro library registration of the Velocity engine
+     */
+    DecorationTemplate( Template template, ClassLoader templateClassLoader, URL url, Set<String> libraries,
+                        List<URL> libraryUrls, MacroLibraryRegistration registration )
+    {
+        this.template = template;
+        this.templateClassLoader = templateClassLoader;
+        this.libraries = libraries;
+        this.registration = registration;
+
+        List<URL> urls = new ArrayList<URL>();
+        if ( url != null )
+        {
+            urls.add( url );
+        }
+        urls.addAll( libraryUrls );
+        this.resources = Collections.unmodifiableList( urls );
+
+        this.includingResources = isIncludingResources( (Node) template.getData() );
+    }
+
+    Template getTemplate()
+    {
+        return template;
+    }
+
+    /** {@inheritDoc} */
+    public void merge( Context context, Writer writer )
+        throws RendererException, IOException
+    {
+        ClassLoader old = null;
+
+        if ( includingResources && templateClassLoader != null )
+        {
+            // -------------------------------------------------------------------------
+            // Resources included by the template are looked up through the template classloader
+            // -------------------------------------------------------------------------
+
+            old = Thread.currentThread().getContextClassLoader();
+
+            Thread.currentThread().setContextClassLoader( templateClassLoader );
+        }
+
+        try
+        {
+            if ( libraries.isEmpty() )
+            {
+                template.merge( context, writer );
+            }
+            else if ( !mergeSkippingLibraries( context, writer ) )
+            {
+                registration.lock.writeLock().lock();
+                try
+                {
+                    // macros of the libraries are registered again by #parse
+                    template.merge( context, writer );
+                    registration.registered = this;
+                }
+                finally
+                {
+                    registration.lock.writeLock().unlock();
+                }
+            }
+        }
+        catch ( VelocityException ve )
+        {
+            throw new RendererException( "Velocity error while merging site decoration template.", ve );
+        }
+        finally
+        {
+            if ( old != null )
+            {
+                Thread.currentThread().setContextClassLoader( old );
+            }
+        }
+    }
+
+    /**
+     * Merge the template without parsing its macro libraries, if their macros are the last registered ones.
+     *
+     * @return <code>true</code> if merged, <code>false</code> if the macro libraries have to be parsed
+     */
+    private boolean mergeSkippingLibraries( Context context, Writer writer )
+    {
+        registration.lock.readLock().lock();
+        try
+        {
+            if ( registration.registered != this )
+            {
+                return false;
+            }
+
+            template.merge( skipLibraries( context ), writer );
+            return true;
+        }
+        finally
+        {
+            registration.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the location of the template, then of the macro libraries parsed only once
+     */
+    public List<URL> getResources()
+    {
+        return resources;
+    }
+
+    /**
+     * Does the template load other resources with <code>#parse</code> or <code>#include</code> while being merged?
+     * Such resources have to be looked up through the template classloader.
+     *
+     * @return <code>true</code> if the template includes other resources
+     */
+    boolean isIncludingResources()
+    {
+        return includingResources;
+    }
+
+    private static boolean isIncludingResources( Node node )
+    {
+        if ( node == null )
+        {
+            return false;
+        }
+
+        if ( node instanceof ASTDirective )
+        {
+            String directive = ( (ASTDirective) node ).getDirectiveName();
+            if ( "parse".equals( directive ) || "include".equals( directive ) )
+            {
+                return true;
+            }
+        }
+
+        for ( int i = 0; i < node.jjtGetNumChildren(); i++ )
+        {
+            if ( isIncludingResources( node.jjtGetChild( i ) ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Find the <code>#parse</code> directives of a template with a literal resource name, like
+     * <code>#parse( "site-macros.vm" )</code>.
+     *
+     * @param template a parsed template
+     * @return the <code>#parse</code> directives
+     */
+    static List<ASTDirective> getLiteralParses( Template template )
+    {
+        List<ASTDirective> parses = new ArrayList<ASTDirective>();
+        addLiteralParses( (Node) template.getData(), parses );
+        return parses;
+    }
+
+    private static void addLiteralParses( Node node, List<ASTDirective> parses )
+    {
+        if ( node == null )
+        {
+            return;
+        }
+
+        if ( node instanceof ASTDirective && "parse".equals( ( (ASTDirective) node ).getDirectiveName() )
+            && getParsedName( (ASTDirective) node ) != null )
+        {
+            parses.add( (ASTDirective) node );
+        }
+
+        for ( int i = 0; i < node.jjtGetNumChildren(); i++ )
+        {
+            addLiteralParses( node.jjtGetChild( i ), parses );
+        }
+    }
+
+    /**
+     * @param parse a <code>#parse</code> directive
+     * @return the literal name of the parsed resource, or <code>null</code> if it is computed
+     */
+    static String getParsedName( ASTDirective parse )
+    {
+        if ( parse.jjtGetNumChildren() != 1 || !( parse.jjtGetChild( 0 ) instanceof ASTStringLiteral ) )
+        {
+            return null;
+        }
+
+        String literal = parse.jjtGetChild( 0 ).literal().trim();
+        if ( literal.length() < 2 || literal.indexOf( '$' ) >= 0 )
+        {
+            return null;
+        }
+
+        return literal.substring( 1, literal.length() - 1 );
+    }
+
+    /**
+     * Check that a template only defines macros: merging it has no effect once its macros are registered.
+     *
+     * @param library a parsed template
+     * @return <code>true</code> if the template contains only macro definitions, comments and whitespace
+     */
+    static boolean isMacroLibrary( Template library )
+    {
+        Node root = (Node) library.getData();
+        if ( root == null )
+        {
+            return false;
+        }
+
+        for ( int i = 0; i < root.jjtGetNumChildren(); i++ )
+        {
+            Node node = root.jjtGetChild( i );
+
+            if ( node instanceof ASTDirective && "macro".equals( ( (ASTDirective) node ).getDirectiveName() ) )
+            {
+                continue;
+            }
+            if ( node instanceof ASTComment )
+            {
+                continue;
+            }
+            if ( node instanceof ASTText && node.literal().trim().length() == 0 )
+            {
+                continue;
+            }
+
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Wrap a Velocity context to skip the <code>#parse</code> of the macro libraries by the template, keeping the
+     * event handlers of the context.
+     *
+     * @param context the Velocity context
+     * @return a context with the same content, that skips the macro libraries
+     */
+    private Context skipLibraries( Context context )
+    {
+        EventCartridge cartridge = new EventCartridge();
+        cartridge.addIncludeEventHandler( new IncludeEventHandler()
+        {
+            public String includeEvent( String includeResourcePath, String currentResourcePath,
+                                        String directiveName )
+            {
+                if ( "parse".equals( directiveName ) && template.getName().equals( currentResourcePath )
+                    && libraries.contains( includeResourcePath ) )
+                {
+                    // already registered macros: blocked, rendering nothing
+                    return null;
+                }
+                return includeResourcePath;
+            }
+        } );
+
+        EventCartridge contextCartridge =
+            ( context instanceof InternalEventContext ) ? ( (InternalEventContext) context ).getEventCartridge()
+                            : null;
+        if ( contextCartridge != null )
+        {
+            Set<EventHandler> handlers =
+                Collections.newSetFromMap( new IdentityHashMap<EventHandler, Boolean>() );
+            addEventHandlers( cartridge, contextCartridge.getIncludeEventHandlers(), handlers );
+            addEventHandlers( cartridge, contextCartridge.getReferenceInsertionEventHandlers(), handlers );
+            addEventHandlers( cartridge, contextCartridge.getNullSetEventHandlers(), handlers );
+            addEventHandlers( cartridge, contextCartridge.getMethodExceptionEventHandlers(), handlers );
+            addEventHandlers( cartridge, contextCartridge.getInvalidReferenceEventHandlers(), handlers );
+        }
+
+        Context skipping = new DelegatingContext( context );
+        cartridge.attachToContext( skipping );
+        return skipping;
+    }
+
+    private static void addEventHandlers( EventCartridge cartridge, Iterator<?> it, Set<EventHandler> added )
+    {
+        while ( it.hasNext() )
+        {
+            EventHandler handler = (EventHandler) it.next();
+            if ( added.add( handler ) )
+            {
+                cartridge.addEventHandler( handler );
+            }
+        }
+    }
+
+    /**
+     * Macro libraries registered by the site decoration templates of a Velocity engine.
+     */
+    static class MacroLibraryRegistration
+    {
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+        /**
+         * The site decoration template whose macro libraries were registered last, guarded by the lock.
+         */
+        private DecorationTemplate registered;
+    }
+}
@@ -19,41 +19,47 @@ package org.apache.maven.doxia.siterenderer;
  * under the License.
  */
 
-import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.LineNumberReader;
 import java.io.OutputStream;
 import java.io.Reader;
-import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
-import java.text.DateFormat;
+import java.security.MessageDigest;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
-import java.util.Enumeration;
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
-import java.util.zip.ZipEntry;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
 
-import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.SystemUtils;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.versioning.ArtifactVersion;
@@ -62,23 +68,20 @@ import org.apache.maven.artifact.versioning.InvalidVersionSpecificationException
 import org.apache.maven.artifact.versioning.Restriction;
 import org.apache.maven.artifact.versioning.VersionRange;
 import org.apache.maven.doxia.Doxia;
+import org.apache.maven.doxia.logging.Log;
 import org.apache.maven.doxia.logging.PlexusLoggerWrapper;
 import org.apache.maven.doxia.parser.ParseException;
 import org.apache.maven.doxia.parser.Parser;
 import org.apache.maven.doxia.parser.manager.ParserNotFoundException;
 import org.apache.maven.doxia.site.decoration.DecorationModel;
 import org.apache.maven.doxia.site.decoration.PublishDate;
+import org.apache.maven.doxia.site.decoration.io.xpp3.DecorationXpp3Writer;
 import org.apache.maven.doxia.site.skin.SkinModel;
-import org.apache.maven.doxia.site.skin.io.xpp3.SkinXpp3Reader;
 import org.apache.maven.doxia.parser.module.ParserModule;
 import org.apache.maven.doxia.parser.module.ParserModuleManager;
 import org.apache.maven.doxia.parser.module.ParserModuleNotFoundException;
 import org.apache.maven.doxia.siterenderer.sink.SiteRendererSink;
-import org.apache.maven.doxia.util.XmlValidator;
-import org.apache.velocity.Template;
 import org.apache.velocity.context.Context;
-import org.apache.velocity.exception.ParseErrorException;
-import org.apache.velocity.exception.ResourceNotFoundException;
 import org.apache.velocity.exception.VelocityException;
 import org.apache.velocity.tools.Scope;
 import org.apache.velocity.tools.ToolManager;
@@ -97,16 +100,19 @@ import org.apache.velocity.tools.generic.LinkTool;
 import org.apache.velocity.tools.generic.LoopTool;
 import org.apache.velocity.tools.generic.MathTool;
 import org.apache.velocity.tools.generic.NumberTool;
-import org.apache.velocity.tools.generic.RenderTool;
 import org.apache.velocity.tools.generic.ResourceTool;
 import org.apache.velocity.tools.generic.SortTool;
 import org.apache.velocity.tools.generic.XmlTool;
 import org.codehaus.plexus.PlexusContainer;
 import org.codehaus.plexus.component.annotations.Component;
 import org.codehaus.plexus.component.annotations.Requirement;
+import org.codehaus.plexus.component.repository.ComponentDescriptor;
+import org.codehaus.plexus.component.repository.ComponentRequirement;
+import org.codehaus.plexus.component.repository.exception.ComponentLookupException;
+import org.codehaus.plexus.component.repository.exception.ComponentRepositoryException;
 import org.codehaus.plexus.i18n.I18N;
 import org.codehaus.plexus.logging.AbstractLogEnabled;
-import org.codehaus.plexus.util.DirectoryScanner;
+import org.codehaus.plexus.personality.plexus.lifecycle.phase.Disposable;
 import org.codehaus.plexus.util.FileUtils;
 import org.codehaus.plexus.util.IOUtil;
 import org.codehaus.plexus.util.Os;
@@ -128,7 +134,7 @@ import org.codehaus.plexus.velocity.VelocityComponent;
 @Component( role = Renderer.class )
 public class DefaultSiteRenderer
     extends AbstractLogEnabled
-    implements Renderer
+    implements Renderer, Disposable
 {
     // ----------------------------------------------------------------------
     // Requirements
@@ -157,6 +163,65 @@ public class DefaultSiteRenderer
 
     private static final String TOOLS_LOCATION = "META-INF/maven/site-tools.xml";
 
+    /**
+     * Content of <code>css/site.css</code> when neither the skin nor the site provide one.
+     */
+    static final String DEFAULT_SITE_CSS = "/* You can override this file with your own styles */";
+
+    /**
+     * Document Velocity context keys, that can be overridden by user template properties.
+     */
+    private static final String[] CONTEXT_DOCUMENT_KEYS =
+        { "relativePath", "currentFileName", "alignedFileName", "currentDate", "dateRevision", "dateFormat" };
+
+    /**
+     * Velocity resources loaded during rendering of documents tracked by the render manifest.
+     */
+    private final Map<RenderingContext, RenderingDependencies> renderingDependencies =
+        new ConcurrentHashMap<RenderingContext, RenderingDependencies>();
+
+    /**
+     * Skins read by this renderer, shared by every module of a build.
+     */
+    private final SkinRegistry skinRegistry = new SkinRegistry();
+
+    /**
+     * Role hint suffix of the per-lookup copies of Doxia parser components.
+     */
+    private static final String PER_LOOKUP_HINT_SUFFIX = "#per-lookup";
+
+    /**
+     * Count of characters of a Velocity document processed ahead of its parsing.
+     */
+    private static final int PREPROCESSING_PIPE_SIZE = 64 * 1024;
+
+    /**
+     * Threads processing Velocity documents while they are parsed, created on demand.
+     */
+    private ExecutorService preprocessingExecutor;
+
+    /**
+     * Doxia parsers of every parallel rendering thread, by parser id. Unset for other threads, that use the shared
+     * parser components.
+     */
+    private final ThreadLocal<Map<String, Parser>> threadParsers = new ThreadLocal<Map<String, Parser>>();
+
+    /**
+     * Parser ids with a per-lookup copy of their component descriptor: <code>true</code> if it is registered,
+     * <code>false</code> if it cannot be.
+     */
+    private final Map<String, Boolean> perLookupParsers = new ConcurrentHashMap<String, Boolean>();
+
+    /**
+     * Validator of XML source documents, sharing compiled grammars between documents.
+     */
+    private final SiteXmlValidator xmlValidator = new SiteXmlValidator();
+
+    /**
+     * Templates evaluated with <code>$render.eval</code> by site templates, parsed once for every document.
+     */
+    private final EvalCache evalCache = new EvalCache();
+
     // ----------------------------------------------------------------------
     // Renderer implementation
     // ----------------------------------------------------------------------
@@ -174,24 +239,20 @@ public class DefaultSiteRenderer
         throws IOException, RendererException
     {
         Map<String, DocumentRenderer> files = new LinkedHashMap<String, DocumentRenderer>();
+        // output names of files keys, by case-folded output name
+        Map<String, List<String>> foldedKeys = new HashMap<String, List<String>>();
         Map<String, String> moduleExcludes = siteRenderingContext.getModuleExcludes();
 
+        final List<SourceDiscovery> discoveries = new ArrayList<SourceDiscovery>();
+
         // look in every site directory (in general src/site or target/generated-site)
         for ( File siteDirectory : siteRenderingContext.getSiteDirectories() )
         {
             if ( siteDirectory.exists() )
             {
-                Collection<ParserModule> modules = parserModuleManager.getParserModules();
                 // use every Doxia parser module
-                for ( ParserModule module : modules )
-                {
-                    File moduleBasedir = new File( siteDirectory, module.getSourceDirectory() );
-
-                    String excludes = ( moduleExcludes == null ) ? null : moduleExcludes.get( module.getParserId() );
-
-                    addModuleFiles( siteRenderingContext.getRootDirectory(), moduleBasedir, module, excludes, files,
-                                    editable );
-                }
+                discoveries.add( new SourceDiscovery( siteDirectory, parserModuleManager.getParserModules(),
+                                                      moduleExcludes ) );
             }
         }
 
@@ -202,40 +263,50 @@ public class DefaultSiteRenderer
             {
                 ParserModule parserModule = parserModuleManager.getParserModule( module.getParserId() );
 
-                String excludes = ( moduleExcludes == null ) ? null : moduleExcludes.get( module.getParserId() );
-
-                addModuleFiles( siteRenderingContext.getRootDirectory(), module.getBasedir(), parserModule, excludes,
-                                files, editable );
+                discoveries.add( new SourceDiscovery( module.getBasedir(), parserModule, moduleExcludes ) );
             }
             catch ( ParserModuleNotFoundException e )
             {
                 throw new RendererException( "Unable to find module: " + e.getMessage(), e );
             }
         }
-        return files;
-    }
 
-    private List<String> filterExtensionIgnoreCase( List<String> fileNames, String extension )
-    {
-        List<String> filtered = new LinkedList<String>( fileNames );
-        for ( Iterator<String> it = filtered.iterator(); it.hasNext(); )
+        // independent directories are walked concurrently, but documents are added in directories order
+        List<Callable<List<SourceDiscovery.ModuleSources>>> tasks =
+            new ArrayList<Callable<List<SourceDiscovery.ModuleSources>>>( discoveries.size() );
+        for ( final SourceDiscovery discovery : discoveries )
         {
-            String name = it.next();
+            tasks.add( new Callable<List<SourceDiscovery.ModuleSources>>()
+            {
+                public List<SourceDiscovery.ModuleSources> call()
+                    throws IOException
+                {
+                    return discovery.discover();
+                }
+            } );
+        }
 
-            // Take care of extension case
-            if ( !endsWithIgnoreCase( name, extension ) )
+        for ( List<SourceDiscovery.ModuleSources> discovered : invokeAll( tasks,
+                                                                         siteRenderingContext.getRenderThreads() ) )
+        {
+            for ( SourceDiscovery.ModuleSources sources : discovered )
             {
-                it.remove();
+                addModuleFiles( siteRenderingContext.getRootDirectory(), sources, files, foldedKeys, editable );
             }
         }
-        return filtered;
+
+        return files;
     }
 
-    private void addModuleFiles( File rootDir, File moduleBasedir, ParserModule module, String excludes,
-                                 Map<String, DocumentRenderer> files, boolean editable )
+    private void addModuleFiles( File rootDir, SourceDiscovery.ModuleSources sources,
+                                 Map<String, DocumentRenderer> files, Map<String, List<String>> foldedKeys,
+                                 boolean editable )
             throws IOException, RendererException
     {
-        if ( !moduleBasedir.exists() || ArrayUtils.isEmpty( module.getExtensions() ) )
+        File moduleBasedir = sources.getBasedir();
+        ParserModule module = sources.getModule();
+
+        if ( !moduleBasedir.exists() )
         {
             return;
         }
@@ -243,20 +314,9 @@ public class DefaultSiteRenderer
         String moduleRelativePath =
             PathTool.getRelativeFilePath( rootDir.getAbsolutePath(), moduleBasedir.getAbsolutePath() );
 
-        List<String> allFiles = FileUtils.getFileNames( moduleBasedir, "**/*.*", excludes, false );
-
         for ( String extension : module.getExtensions() )
         {
-            String fullExtension = "." + extension;
-
-            List<String> docs = filterExtensionIgnoreCase( allFiles, fullExtension );
-
-            // *.<extension>.vm
-            List<String> velocityFiles = filterExtensionIgnoreCase( allFiles, fullExtension + ".vm" );
-
-            docs.addAll( velocityFiles );
-
-            for ( String doc : docs )
+            for ( String doc : sources.getDocuments( extension ) )
             {
                 RenderingContext context = new RenderingContext( moduleBasedir, moduleRelativePath, doc,
                                                                  module.getParserId(), extension, editable );
@@ -284,82 +344,392 @@ public class DefaultSiteRenderer
                 // -----------------------------------------------------------------------
                 // Handle key without case differences
                 // -----------------------------------------------------------------------
-                for ( Map.Entry<String, DocumentRenderer> entry : files.entrySet() )
+                String foldedKey = foldCase( key );
+                List<String> sameFoldedKeys = foldedKeys.get( foldedKey );
+                if ( sameFoldedKeys == null )
                 {
-                    if ( entry.getKey().equalsIgnoreCase( key ) )
-                    {
-                        RenderingContext originalContext = entry.getValue().getRenderingContext();
+                    sameFoldedKeys = new ArrayList<String>( 1 );
+                    foldedKeys.put( foldedKey, sameFoldedKeys );
+                }
 
-                        File originalDoc = new File( originalContext.getBasedir(), originalContext.getInputName() );
+                for ( String sameFoldedKey : sameFoldedKeys )
+                {
+                    RenderingContext originalContext = files.get( sameFoldedKey ).getRenderingContext();
 
-                        if ( Os.isFamily( Os.FAMILY_WINDOWS ) )
-                        {
-                            throw new RendererException( "File '" + module.getSourceDirectory() + File.separator
-                                + doc + "' clashes with existing '" + originalDoc + "'." );
-                        }
+                    File originalDoc = new File( originalContext.getBasedir(), originalContext.getInputName() );
 
-                        if ( getLogger().isWarnEnabled() )
-                        {
-                            getLogger().warn( "File '" + module.getSourceDirectory() + File.separator + doc
-                                + "' could clash with existing '" + originalDoc + "'." );
-                        }
+                    if ( Os.isFamily( Os.FAMILY_WINDOWS ) )
+                    {
+                        throw new RendererException( "File '" + module.getSourceDirectory() + File.separator
+                            + doc + "' clashes with existing '" + originalDoc + "'." );
+                    }
+
+                    if ( getLogger().isWarnEnabled() )
+                    {
+                        getLogger().warn( "File '" + module.getSourceDirectory() + File.separator + doc
+                            + "' could clash with existing '" + originalDoc + "'." );
                     }
                 }
 
                 files.put( key, new DoxiaDocumentRenderer( context ) );
+                sameFoldedKeys.add( key );
             }
         }
     }
 
+    /**
+     * Fold the case of a document output name: names with the same folded case are equal ignoring case, as
+     * defined by {@link String#equalsIgnoreCase(String)}.
+     *
+     * @param key the output name
+     * @return the case-folded output name
+     */
+    private static String foldCase( String key )
+    {
+        char[] chars = key.toCharArray();
+        for ( int i = 0; i < chars.length; i++ )
+        {
+            chars[i] = Character.toLowerCase( Character.toUpperCase( chars[i] ) );
+        }
+        return new String( chars );
+    }
+
     /** {@inheritDoc} */
     public void render( Collection<DocumentRenderer> documents, SiteRenderingContext siteRenderingContext,
                         File outputDirectory )
         throws RendererException, IOException
     {
-        for ( DocumentRenderer docRenderer : documents )
+        if ( siteRenderingContext.isReproducibleOutput() && siteRenderingContext.getPublishDate() == null
+            && getLogger().isWarnEnabled() )
         {
-            RenderingContext renderingContext = docRenderer.getRenderingContext();
+            getLogger().warn( "Reproducible output without publish date: pages use the current date as "
+                + "$currentDate and $dateRevision, and change on every build" );
+        }
 
-            File outputFile = new File( outputDirectory, docRenderer.getOutputName() );
+        RenderManifest manifest = null;
+        if ( siteRenderingContext.isIncrementalRendering() )
+        {
+            manifest = RenderManifest.load( outputDirectory, getRenderingFingerprint( siteRenderingContext ) );
+        }
 
-            File inputFile = new File( renderingContext.getBasedir(), renderingContext.getInputName() );
+        try
+        {
+            if ( siteRenderingContext.getRenderThreads() <= 1 )
+            {
+                for ( DocumentRenderer docRenderer : documents )
+                {
+                    renderDocument( docRenderer, siteRenderingContext, outputDirectory, manifest );
+                }
+                return;
+            }
 
-            boolean modified = !outputFile.exists() || ( inputFile.lastModified() > outputFile.lastModified() )
-                || ( siteRenderingContext.getDecoration().getLastModified() > outputFile.lastModified() );
+            // only Doxia source documents are known to be thread-safe: other document renderers (like reports)
+            // are rendered sequentially from the calling thread
+            List<DocumentRenderer> parallelDocuments = new ArrayList<DocumentRenderer>();
+            List<DocumentRenderer> sequentialDocuments = new ArrayList<DocumentRenderer>();
+            for ( DocumentRenderer docRenderer : documents )
+            {
+                if ( docRenderer instanceof DoxiaDocumentRenderer )
+                {
+                    parallelDocuments.add( docRenderer );
+                }
+                else
+                {
+                    sequentialDocuments.add( docRenderer );
+                }
+            }
+
+            renderParallel( parallelDocuments, siteRenderingContext, outputDirectory, manifest );
+
+            for ( DocumentRenderer docRenderer : sequentialDocuments )
+            {
+                renderDocument( docRenderer, siteRenderingContext, outputDirectory, manifest );
+            }
+        }
+        finally
+        {
+            if ( manifest != null )
+            {
+                // also keep track of documents rendered before an eventual failure
+                manifest.save();
+            }
+
+            if ( getLogger().isDebugEnabled() )
+            {
+                getLogger().debug( "$render.eval template cache: " + evalCache.getHits() + " hits, "
+                    + evalCache.getMisses() + " misses, " + evalCache.getParseTime() / 1000000 + " ms parsing, "
+                    + evalCache.getParseTimeSaved() / 1000000 + " ms parsing saved" );
+            }
+        }
+    }
+
+    private void renderParallel( Collection<DocumentRenderer> documents,
+                                 final SiteRenderingContext siteRenderingContext, final File outputDirectory,
+                                 final RenderManifest manifest )
+        throws RendererException, IOException
+    {
+        if ( documents.isEmpty() )
+        {
+            return;
+        }
+
+        int threads = Math.min( siteRenderingContext.getRenderThreads(), documents.size() );
+
+        if ( getLogger().isDebugEnabled() )
+        {
+            getLogger().debug( "Rendering " + documents.size() + " documents with " + threads + " threads" );
+        }
+
+        ExecutorService executor =
+            Executors.newFixedThreadPool( threads, new RenderThreadFactory( Thread.currentThread() ) );
+
+        try
+        {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>( documents.size() );
+            for ( final DocumentRenderer docRenderer : documents )
+            {
+                futures.add( executor.submit( new Callable<Void>()
+                {
+                    public Void call()
+                        throws RendererException, IOException
+                    {
+                        if ( threadParsers.get() == null )
+                        {
+                            // parallel rendering threads parse with their own parser instances
+                            threadParsers.set( new HashMap<String, Parser>() );
+                        }
+                        renderDocument( docRenderer, siteRenderingContext, outputDirectory, manifest );
+                        return null;
+                    }
+                } ) );
+            }
 
-            if ( modified || docRenderer.isOverwrite() )
+            for ( Future<Void> future : futures )
             {
-                if ( !outputFile.getParentFile().exists() )
+                try
+                {
+                    future.get();
+                }
+                catch ( ExecutionException e )
+                {
+                    Throwable cause = e.getCause();
+                    if ( cause instanceof RendererException )
+                    {
+                        throw (RendererException) cause;
+                    }
+                    if ( cause instanceof IOException )
+                    {
+                        throw (IOException) cause;
+                    }
+                    if ( cause instanceof RuntimeException )
+                    {
+                        throw (RuntimeException) cause;
+                    }
+                    if ( cause instanceof Error )
+                    {
+                        throw (Error) cause;
+                    }
+                    throw new RendererException( "Error while rendering documents: " + cause.getMessage(), e );
+                }
+                catch ( InterruptedException e )
                 {
-                    outputFile.getParentFile().mkdirs();
+                    Thread.currentThread().interrupt();
+                    throw new RendererException( "Interrupted while rendering documents", e );
                 }
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
 
-                if ( getLogger().isDebugEnabled() )
+    private void renderDocument( DocumentRenderer docRenderer, SiteRenderingContext siteRenderingContext,
+                                 File outputDirectory, RenderManifest manifest )
+        throws RendererException, IOException
+    {
+        RenderingContext renderingContext = docRenderer.getRenderingContext();
+
+        String outputName = docRenderer.getOutputName();
+
+        File outputFile = new File( outputDirectory, outputName );
+
+        File inputFile = new File( renderingContext.getBasedir(), renderingContext.getInputName() );
+
+        boolean modified;
+        String sourceHash = null;
+        if ( manifest == null )
+        {
+            modified = !outputFile.exists() || ( inputFile.lastModified() > outputFile.lastModified() )
+                || ( siteRenderingContext.getDecoration().getLastModified() > outputFile.lastModified() );
+        }
+        else if ( !docRenderer.isOverwrite() && inputFile.isFile() )
+        {
+            sourceHash = RenderManifest.hash( inputFile );
+            modified = !outputFile.exists() || !manifest.isUpToDate( outputName, sourceHash );
+        }
+        else
+        {
+            modified = true;
+        }
+
+        if ( modified || docRenderer.isOverwrite() )
+        {
+            if ( !outputFile.getParentFile().exists() )
+            {
+                outputFile.getParentFile().mkdirs();
+            }
+
+            if ( getLogger().isDebugEnabled() )
+            {
+                getLogger().debug( "Generating " + outputFile );
+            }
+
+            RenderingDependencies dependencies = null;
+            if ( manifest != null )
+            {
+                // don't keep a stale entry if rendering fails
+                manifest.remove( outputName );
+
+                if ( sourceHash != null )
                 {
-                    getLogger().debug( "Generating " + outputFile );
+                    dependencies = new RenderingDependencies( manifest );
+                    renderingDependencies.put( renderingContext, dependencies );
                 }
+            }
 
-                Writer writer = null;
-                try
+            Writer writer = null;
+            ChangedFileOutputStream changedOutput = null;
+            try
+            {
+                if ( !docRenderer.isExternalReport() )
                 {
-                    if ( !docRenderer.isExternalReport() )
+                    if ( siteRenderingContext.isReproducibleOutput() )
+                    {
+                        // keep the output file untouched if its content does not change
+                        changedOutput = new ChangedFileOutputStream( outputFile );
+                        writer = WriterFactory.newWriter( changedOutput, siteRenderingContext.getOutputEncoding() );
+                    }
+                    else
                     {
                         writer = WriterFactory.newWriter( outputFile, siteRenderingContext.getOutputEncoding() );
                     }
-                    docRenderer.renderDocument( writer, this, siteRenderingContext );
                 }
-                finally
+                docRenderer.renderDocument( writer, this, siteRenderingContext );
+
+                if ( changedOutput != null )
                 {
-                    IOUtil.close( writer );
+                    // the output file is written on close: report failures
+                    writer.close();
                 }
             }
-            else
+            finally
             {
-                if ( getLogger().isDebugEnabled() )
+                IOUtil.close( writer );
+
+                if ( dependencies != null )
                 {
-                    getLogger().debug( inputFile + " unchanged, not regenerating..." );
+                    renderingDependencies.remove( renderingContext );
                 }
             }
+
+            if ( dependencies != null )
+            {
+                manifest.update( outputName, sourceHash, dependencies.getDependencies() );
+            }
+
+            if ( changedOutput != null && !changedOutput.isWritten() && getLogger().isDebugEnabled() )
+            {
+                getLogger().debug( outputFile + " content unchanged, not written" );
+            }
+        }
+        else
+        {
+            if ( getLogger().isDebugEnabled() )
+            {
+                getLogger().debug( inputFile + " unchanged, not regenerating..." );
+            }
+        }
+    }
+
+    /**
+     * Compute the fingerprint of every site rendering input that is common to all documents: any change of this
+     * fingerprint invalidates every document of the render manifest.
+     *
+     * @param siteRenderingContext the site rendering context
+     * @return the hex encoded fingerprint
+     * @throws IOException if a skin or template cannot be read
+     */
+    private String getRenderingFingerprint( SiteRenderingContext siteRenderingContext )
+        throws IOException
+    {
+        MessageDigest digest = RenderManifest.newDigest();
+
+        Package p = DefaultSiteRenderer.class.getPackage();
+        updateDigest( digest, "doxiaSiteRendererVersion", ( p == null ) ? null : p.getImplementationVersion() );
+
+        Artifact skin = siteRenderingContext.getSkin();
+        if ( skin != null )
+        {
+            updateDigest( digest, "skin", skin.getId() );
+            if ( skin.getFile() != null && skin.getFile().isFile() )
+            {
+                updateDigest( digest, "skinChecksum", getSkinArchive( skin ).getChecksum() );
+            }
+        }
+
+        String templateName = siteRenderingContext.getTemplateName();
+        updateDigest( digest, "template", templateName );
+        ClassLoader templateClassLoader = siteRenderingContext.getTemplateClassLoader();
+        if ( templateClassLoader == null )
+        {
+            templateClassLoader = Thread.currentThread().getContextClassLoader();
+        }
+        if ( skin == null && templateName != null && templateClassLoader != null )
+        {
+            InputStream template = templateClassLoader.getResourceAsStream( templateName );
+            if ( template != null )
+            {
+                RenderManifest.update( digest, template );
+            }
+        }
+
+        if ( siteRenderingContext.getDecoration() != null )
+        {
+            StringWriter decoration = new StringWriter();
+            new DecorationXpp3Writer().write( decoration, siteRenderingContext.getDecoration() );
+            updateDigest( digest, "decoration", decoration.toString() );
+        }
+
+        Map<String, ?> templateProperties = siteRenderingContext.getTemplateProperties();
+        if ( templateProperties != null )
+        {
+            for ( Map.Entry<String, ?> entry : new TreeMap<String, Object>( templateProperties ).entrySet() )
+            {
+                updateDigest( digest, entry.getKey(), String.valueOf( entry.getValue() ) );
+            }
+        }
+
+        updateDigest( digest, "locale", String.valueOf( siteRenderingContext.getLocale() ) );
+        updateDigest( digest, "inputEncoding", siteRenderingContext.getInputEncoding() );
+        updateDigest( digest, "outputEncoding", siteRenderingContext.getOutputEncoding() );
+        updateDigest( digest, "defaultWindowTitle", siteRenderingContext.getDefaultWindowTitle() );
+        Date publishDate = siteRenderingContext.getPublishDate();
+        updateDigest( digest, "publishDate", ( publishDate == null ) ? null : String.valueOf( publishDate.getTime() ) );
+
+        return RenderManifest.toHex( digest.digest() );
+    }
+
+    private static void updateDigest( MessageDigest digest, String key, String value )
+    {
+        try
+        {
+            digest.update( ( key + '=' + value + '\n' ).getBytes( "UTF-8" ) );
+        }
+        catch ( UnsupportedEncodingException e )
+        {
+            // every Java platform implementation is required to support UTF-8
+            throw new IllegalStateException( e );
         }
     }
 
@@ -372,46 +742,32 @@ public class DefaultSiteRenderer
         File doc = new File( docRenderingContext.getBasedir(), docRenderingContext.getInputName() );
 
         Reader reader = null;
+        Future<Void> preprocessing = null;
+        Future<Void> validation = null;
         try
         {
             String resource = doc.getAbsolutePath();
 
-            Parser parser = doxia.getParser( docRenderingContext.getParserId() );
-            // DOXIASITETOOLS-146 don't render comments from source markup
-            parser.setEmitComments( false );
+            Parser parser = getThreadParser( docRenderingContext.getParserId() );
+            boolean sharedParser = parser == null;
+            if ( sharedParser )
+            {
+                parser = doxia.getParser( docRenderingContext.getParserId() );
+            }
 
             // TODO: DOXIA-111: the filter used here must be checked generally.
             if ( docRenderingContext.getAttribute( "velocity" ) != null )
             {
                 getLogger().debug( "Processing Velocity for " + docRenderingContext.getDoxiaSourcePath() );
-                try
-                {
-                    Context vc = createDocumentVelocityContext( docRenderingContext, siteContext );
-
-                    StringWriter sw = new StringWriter();
 
-                    velocity.getEngine().mergeTemplate( resource, siteContext.getInputEncoding(), vc, sw );
+                Context vc = trackDependencies( docRenderingContext,
+                                                createDocumentVelocityContext( docRenderingContext, siteContext ) );
 
-                    String doxiaContent = sw.toString();
-
-                    if ( siteContext.getProcessedContentOutput() != null )
-                    {
-                        // save Velocity processing result, ie the Doxia content that will be parsed after
-                        saveVelocityProcessedContent( docRenderingContext, siteContext, doxiaContent );
-                    }
-
-                    reader = new StringReader( doxiaContent );
-                }
-                catch ( VelocityException e )
-                {
-                    throw new RendererException( "Error parsing " + docRenderingContext.getDoxiaSourcePath()
-                        + " as a Velocity template: " + e.getMessage(), e );
-                }
+                // Velocity output is parsed while being produced
+                CharPipe pipe = new CharPipe( PREPROCESSING_PIPE_SIZE );
+                reader = pipe.getReader();
+                preprocessing = preprocessVelocity( resource, vc, pipe, docRenderingContext, siteContext );
 
-                if ( parser.getType() == Parser.XML_TYPE && siteContext.isValidate() )
-                {
-                    reader = validate( reader, resource );
-                }
             }
             else
             {
@@ -419,10 +775,6 @@ public class DefaultSiteRenderer
                 {
                     case Parser.XML_TYPE:
                         reader = ReaderFactory.newXmlReader( doc );
-                        if ( siteContext.isValidate() )
-                        {
-                            reader = validate( reader, resource );
-                        }
                         break;
 
                     case Parser.TXT_TYPE:
@@ -431,9 +783,29 @@ public class DefaultSiteRenderer
                         reader = ReaderFactory.newReader( doc, siteContext.getInputEncoding() );
                 }
             }
+
+            if ( parser.getType() == Parser.XML_TYPE && siteContext.isValidate() )
+            {
+                // the content is validated while being parsed
+                CharPipe pipe = new CharPipe( PREPROCESSING_PIPE_SIZE );
+                reader = new TeeReader( reader, pipe.getWriter() );
+                validation = validate( pipe.getReader(), resource );
+            }
+
             sink.enableLogging( new PlexusLoggerWrapper( getLogger() ) );
 
-            doxia.parse( reader, docRenderingContext.getParserId(), sink );
+            if ( sharedParser )
+            {
+                // Doxia parsers are stateful components: don't share an instance between rendering threads
+                synchronized ( parser )
+                {
+                    parse( parser, reader, sink );
+                }
+            }
+            else
+            {
+                parse( parser, reader, sink );
+            }
         }
         catch ( ParserNotFoundException e )
         {
@@ -441,11 +813,20 @@ public class DefaultSiteRenderer
         }
         catch ( ParseException e )
         {
+            // a Velocity or validation failure is the cause of the parsing failure
+            IOUtil.close( reader );
+            awaitPreprocessing( preprocessing, docRenderingContext );
+            awaitValidation( validation, doc );
+
             throw new RendererException( "Error parsing '"
                     + doc + "': line [" + e.getLineNumber() + "] " + e.getMessage(), e );
         }
         catch ( IOException e )
         {
+            IOUtil.close( reader );
+            awaitPreprocessing( preprocessing, docRenderingContext );
+            awaitValidation( validation, doc );
+
             throw new RendererException( "IOException when processing '" + doc + "'", e );
         }
         finally
@@ -457,11 +838,254 @@ public class DefaultSiteRenderer
             IOUtil.close( reader );
         }
 
-        mergeDocumentIntoSite( writer, (DocumentContent) sink, siteContext );
+        awaitPreprocessing( preprocessing, docRenderingContext );
+        awaitValidation( validation, doc );
+
+        try
+        {
+            mergeDocumentIntoSite( writer, (DocumentContent) sink, siteContext );
+        }
+        finally
+        {
+            sink.release();
+        }
+    }
+
+    /**
+     * Get the Doxia parser of the current parallel rendering thread. Doxia parsers are stateful singleton
+     * components, that can't parse documents in several threads: every parallel rendering thread gets its own
+     * instances, looked up from a per-lookup copy of the parser component descriptor.
+     *
+     * @param parserId the parser id
+     * @return a parser instance used only by the current thread, or <code>null</code> if the shared parser component
+     * must be used, when rendering sequentially or if no per-lookup instance can be created
+     */
+    private Parser getThreadParser( String parserId )
+    {
+        Map<String, Parser> parsers = threadParsers.get();
+        if ( parsers == null )
+        {
+            return null;
+        }
+
+        Parser parser = parsers.get( parserId );
+        if ( parser == null )
+        {
+            parser = lookupPerLookupParser( parserId );
+            if ( parser != null )
+            {
+                parsers.put( parserId, parser );
+            }
+        }
+
+        return parser;
+    }
+
+    private void parse( Parser parser, Reader reader, SiteRendererSink sink )
+        throws ParseException
+    {
+        // DOXIASITETOOLS-146 don't render comments from source markup
+        parser.setEmitComments( false );
+        parser.enableLogging( new PlexusLoggerWrapper( getLogger() ) );
+
+        parser.parse( reader, sink );
+    }
+
+    /**
+     * Look up a new instance of a Doxia parser. Parser components are singletons: a copy of their component
+     * descriptor is registered once in the container, with the per-lookup instantiation strategy and the
+     * <code>&lt;parserId&gt;#per-lookup</code> role hint. Every other attribute of the descriptor is kept, including
+     * the class realm of the parser, so instances are created and composed like the shared one.
+     *
+     * @param parserId the parser id
+     * @return a new parser instance, or <code>null</code> if it cannot be created
+     */
+    private Parser lookupPerLookupParser( String parserId )
+    {
+        String hint = parserId + PER_LOOKUP_HINT_SUFFIX;
+
+        synchronized ( perLookupParsers )
+        {
+            Boolean registered = perLookupParsers.get( parserId );
+            if ( registered == null )
+            {
+                registered = registerPerLookupParser( parserId, hint );
+                perLookupParsers.put( parserId, registered );
+            }
+            if ( !registered )
+            {
+                return null;
+            }
+        }
+
+        try
+        {
+            return (Parser) plexus.lookup( Parser.ROLE, hint );
+        }
+        catch ( ComponentLookupException e )
+        {
+            getLogger().debug( "Cannot look up per-lookup " + parserId
+                + " parser, documents are parsed one at a time: " + e.getMessage() );
+            return null;
+        }
     }
 
-    private void saveVelocityProcessedContent( RenderingContext docRenderingContext, SiteRenderingContext siteContext,
-                                               String doxiaContent )
+    private boolean registerPerLookupParser( String parserId, String hint )
+    {
+        ComponentDescriptor descriptor = plexus.getComponentDescriptor( Parser.ROLE, parserId );
+        if ( descriptor == null )
+        {
+            // unknown parser: reported when looking up the shared instance
+            return false;
+        }
+
+        ComponentDescriptor perLookup = new ComponentDescriptor();
+        perLookup.setRole( descriptor.getRole() );
+        perLookup.setRoleHint( hint );
+        perLookup.setAlias( descriptor.getAlias() );
+        perLookup.setDescription( descriptor.getDescription() );
+        perLookup.setImplementation( descriptor.getImplementation() );
+        perLookup.setVersion( descriptor.getVersion() );
+        perLookup.setComponentType( descriptor.getComponentType() );
+        perLookup.setComponentProfile( descriptor.getComponentProfile() );
+        perLookup.setComponentFactory( descriptor.getComponentFactory() );
+        perLookup.setComponentComposer( descriptor.getComponentComposer() );
+        perLookup.setComponentConfigurator( descriptor.getComponentConfigurator() );
+        perLookup.setComponentSetDescriptor( descriptor.getComponentSetDescriptor() );
+        perLookup.setLifecycleHandler( descriptor.getLifecycleHandler() );
+        perLookup.setConfiguration( descriptor.getConfiguration() );
+        perLookup.setRealmId( descriptor.getRealmId() );
+        perLookup.setIsolatedRealm( descriptor.isIsolatedRealm() );
+        for ( Object requirement : descriptor.getRequirements() )
+        {
+            perLookup.addRequirement( (ComponentRequirement) requirement );
+        }
+        perLookup.setInstantiationStrategy( "per-lookup" );
+
+        try
+        {
+            plexus.addComponentDescriptor( perLookup );
+            return true;
+        }
+        catch ( ComponentRepositoryException e )
+        {
+            getLogger().debug( "Cannot register per-lookup " + parserId
+                + " parser, documents are parsed one at a time: " + e.getMessage() );
+            return false;
+        }
+    }
+
+    /**
+     * Start processing a Velocity document in a separate thread, writing its output to a pipe, and to the processed
+     * content output if configured.
+     */
+    private Future<Void> preprocessVelocity( final String resource, final Context vc, final CharPipe pipe,
+                                             RenderingContext docRenderingContext,
+                                             final SiteRenderingContext siteContext )
+        throws IOException
+    {
+        Writer out = new BufferedWriter( pipe.getWriter() );
+
+        if ( siteContext.getProcessedContentOutput() != null )
+        {
+            // save Velocity processing result, ie the Doxia content that is parsed
+            out = new TeeWriter( out, newVelocityProcessedContentWriter( docRenderingContext, siteContext ) );
+        }
+
+        final Writer writer = out;
+        final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+
+        return getPreprocessingExecutor().submit( new Callable<Void>()
+        {
+            public Void call()
+                throws Exception
+            {
+                Thread thread = Thread.currentThread();
+                ClassLoader old = thread.getContextClassLoader();
+                thread.setContextClassLoader( contextClassLoader );
+                try
+                {
+                    velocity.getEngine().mergeTemplate( resource, siteContext.getInputEncoding(), vc, writer );
+                }
+                catch ( Throwable t )
+                {
+                    pipe.fail( t );
+                    throw t;
+                }
+                finally
+                {
+                    thread.setContextClassLoader( old );
+                    IOUtil.close( writer );
+                }
+                return null;
+            }
+        } );
+    }
+
+    private synchronized ExecutorService getPreprocessingExecutor()
+    {
+        if ( preprocessingExecutor == null )
+        {
+            // idle threads are stopped after a while
+            preprocessingExecutor = Executors.newCachedThreadPool( new RenderThreadFactory( Thread.currentThread() ) );
+        }
+        return preprocessingExecutor;
+    }
+
+    /**
+     * Stop the threads processing Velocity documents and close the skins when the renderer component is released.
+     */
+    public synchronized void dispose()
+    {
+        if ( preprocessingExecutor != null )
+        {
+            preprocessingExecutor.shutdownNow();
+            preprocessingExecutor = null;
+        }
+
+        skinRegistry.clear();
+    }
+
+    /**
+     * Wait for the end of Velocity processing of a document, and report its failure.
+     */
+    private void awaitPreprocessing( Future<Void> preprocessing, RenderingContext docRenderingContext )
+        throws RendererException
+    {
+        if ( preprocessing == null )
+        {
+            return;
+        }
+
+        try
+        {
+            preprocessing.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new RendererException( "Interrupted while processing " + docRenderingContext.getDoxiaSourcePath()
+                + " as a Velocity template", e );
+        }
+        catch ( ExecutionException e )
+        {
+            Throwable cause = e.getCause();
+            if ( cause instanceof VelocityException )
+            {
+                throw new RendererException( "Error parsing " + docRenderingContext.getDoxiaSourcePath()
+                    + " as a Velocity template: " + cause.getMessage(), cause );
+            }
+            if ( cause instanceof Error )
+            {
+                throw (Error) cause;
+            }
+            throw new RendererException( "Error processing " + docRenderingContext.getDoxiaSourcePath()
+                + " as a Velocity template: " + cause.getMessage(), cause );
+        }
+    }
+
+    private Writer newVelocityProcessedContentWriter( RenderingContext docRenderingContext,
+                                                      SiteRenderingContext siteContext )
         throws IOException
     {
         if ( !siteContext.getProcessedContentOutput().exists() )
@@ -479,7 +1103,59 @@ public class DefaultSiteRenderer
             outputParent.mkdirs();
         }
 
-        FileUtils.fileWrite( outputFile, siteContext.getInputEncoding(), doxiaContent );
+        return WriterFactory.newWriter( outputFile, siteContext.getInputEncoding() );
+    }
+
+    /**
+     * Render a document to a writer, outside a site rendering, recording the resources loaded by Velocity.
+     *
+     * @param docRenderer the document renderer
+     * @param writer the writer for the rendered document
+     * @param siteRenderingContext the site rendering context
+     * @param manifest the manifest computing the content hash of resources
+     * @return the content hash of resources loaded by Velocity, keyed by URL
+     * @throws RendererException if the document cannot be rendered
+     * @throws IOException if the document cannot be written
+     */
+    Map<String, String> renderTrackingDependencies( DocumentRenderer docRenderer, Writer writer,
+                                                    SiteRenderingContext siteRenderingContext,
+                                                    RenderManifest manifest )
+        throws RendererException, IOException
+    {
+        RenderingContext renderingContext = docRenderer.getRenderingContext();
+        if ( renderingContext == null )
+        {
+            docRenderer.renderDocument( writer, this, siteRenderingContext );
+            return Collections.emptyMap();
+        }
+
+        RenderingDependencies dependencies = new RenderingDependencies( manifest );
+        renderingDependencies.put( renderingContext, dependencies );
+        try
+        {
+            docRenderer.renderDocument( writer, this, siteRenderingContext );
+        }
+        finally
+        {
+            renderingDependencies.remove( renderingContext );
+        }
+
+        return dependencies.getDependencies();
+    }
+
+    private RenderingDependencies getRenderingDependencies( RenderingContext renderingContext )
+    {
+        return ( renderingContext == null ) ? null : renderingDependencies.get( renderingContext );
+    }
+
+    /**
+     * If the document is tracked by the render manifest, wrap its Velocity context to record included resources.
+     */
+    private Context trackDependencies( RenderingContext renderingContext, Context context )
+    {
+        RenderingDependencies dependencies = getRenderingDependencies( renderingContext );
+
+        return ( dependencies == null ) ? context : dependencies.track( context );
     }
 
     /**
@@ -489,46 +1165,77 @@ public class DefaultSiteRenderer
      * @return a Velocity tools managed context
      */
     protected Context createToolManagedVelocityContext( SiteRenderingContext siteRenderingContext )
+    {
+        // request scoped tools are instantiated only when used by a template
+        return getToolManager( siteRenderingContext ).createContext();
+    }
+
+    /**
+     * Get the Velocity tool manager for a site: tools configuration and application scoped tools are created only
+     * once per site rendering context, unless its locale or publish date format changes.
+     *
+     * @param siteRenderingContext the site rendering context
+     * @return the tool manager
+     */
+    private ToolManager getToolManager( SiteRenderingContext siteRenderingContext )
     {
         Locale locale = siteRenderingContext.getLocale();
         String dateFormat = siteRenderingContext.getDecoration().getPublishDate().getFormat();
 
-        EasyFactoryConfiguration config = new EasyFactoryConfiguration( false );
-        config.property( "safeMode", Boolean.FALSE );
-        config.toolbox( Scope.REQUEST )
-            .tool( ContextTool.class )
-            .tool( LinkTool.class )
-            .tool( LoopTool.class )
-            .tool( RenderTool.class );
-        config.toolbox( Scope.APPLICATION ).property( "locale", locale )
-            .tool( AlternatorTool.class )
-            .tool( ClassTool.class )
-            .tool( ComparisonDateTool.class ).property( "format", dateFormat )
-            .tool( ConversionTool.class ).property( "dateFormat", dateFormat )
-            .tool( DisplayTool.class )
-            .tool( EscapeTool.class )
-            .tool( FieldTool.class )
-            .tool( MathTool.class )
-            .tool( NumberTool.class )
-            .tool( ResourceTool.class ).property( "bundles", new String[] { "site-renderer" } )
-            .tool( SortTool.class )
-            .tool( XmlTool.class );
-
-        FactoryConfiguration customConfig = ConfigurationUtils.findInClasspath( TOOLS_LOCATION );
-
-        if ( customConfig != null )
-        {
-            config.addConfiguration( customConfig );
-        }
-
-        ToolManager manager = new ToolManager( false, false );
-        manager.configure( config );
-
-        return manager.createContext();
+        List<Object> key = Arrays.<Object>asList( locale, dateFormat );
+
+        synchronized ( siteRenderingContext )
+        {
+            ToolManager manager = siteRenderingContext.getToolManager();
+
+            if ( manager != null && key.equals( siteRenderingContext.getToolManagerKey() ) )
+            {
+                return manager;
+            }
+
+            EasyFactoryConfiguration config = new EasyFactoryConfiguration( false );
+            config.property( "safeMode", Boolean.FALSE );
+            config.toolbox( Scope.REQUEST )
+                .tool( ContextTool.class )
+                .tool( LinkTool.class )
+                .tool( LoopTool.class )
+                .tool( CachingRenderTool.class ).property( CachingRenderTool.KEY_EVAL_CACHE, evalCache );
+            config.toolbox( Scope.APPLICATION ).property( "locale", locale )
+                .tool( AlternatorTool.class )
+                .tool( ClassTool.class )
+                .tool( ComparisonDateTool.class ).property( "format", dateFormat )
+                .tool( ConversionTool.class ).property( "dateFormat", dateFormat )
+                .tool( DisplayTool.class )
+                .tool( EscapeTool.class )
+                .tool( FieldTool.class )
+                .tool( MathTool.class )
+                .tool( NumberTool.class )
+                .tool( ResourceTool.class ).property( "bundles", new String[] { "site-renderer" } )
+                .tool( SortTool.class )
+                .tool( XmlTool.class );
+
+            FactoryConfiguration customConfig = ConfigurationUtils.findInClasspath( TOOLS_LOCATION );
+
+            if ( customConfig != null )
+            {
+                config.addConfiguration( customConfig );
+            }
+
+            manager = new SiteToolManager();
+            manager.configure( config );
+
+            // application toolbox is created lazily, without synchronization: create it now
+            manager.createContext();
+
+            siteRenderingContext.setToolManager( manager, key );
+
+            return manager;
+        }
     }
 
     /**
      * Create a Velocity Context for a Doxia document, containing every information about rendered document.
+     * Site-invariant information is computed once per site rendering context and shared by every document context.
      *
      * @param sink the site renderer sink for the document
      * @param siteRenderingContext the site rendering context
@@ -538,76 +1245,146 @@ public class DefaultSiteRenderer
                                                      SiteRenderingContext siteRenderingContext )
     {
         Context context = createToolManagedVelocityContext( siteRenderingContext );
+
+        VelocityContextBase base = getVelocityContextBase( siteRenderingContext );
+
+        if ( context instanceof SiteToolManager.SiteToolContext )
+        {
+            ( (SiteToolManager.SiteToolContext) context ).setBase( base.getEntries() );
+        }
+        else
+        {
+            for ( Map.Entry<String, Object> entry : base.getEntries().entrySet() )
+            {
+                context.put( entry.getKey(), entry.getValue() );
+            }
+        }
+
         // ----------------------------------------------------------------------
-        // Data objects
+        // Document data objects
         // ----------------------------------------------------------------------
 
         context.put( "relativePath", renderingContext.getRelativePath() );
 
-        String currentFileName = renderingContext.getOutputName().replace( '\\', '/' );
-        context.put( "currentFileName", currentFileName );
+        String currentFileName = renderingContext.getOutputName().replace( '\\', '/' );
+        context.put( "currentFileName", currentFileName );
+
+        context.put( "alignedFileName", PathTool.calculateLink( currentFileName, renderingContext.getRelativePath() ) );
+
+        Date currentDate = new Date();
+        if ( siteRenderingContext.isReproducibleOutput() && siteRenderingContext.getPublishDate() != null )
+        {
+            // don't make every page change on every build
+            currentDate = siteRenderingContext.getPublishDate();
+        }
+        context.put( "currentDate", currentDate );
+        context.put( "dateRevision", base.newDateRevisionFormat().format( currentDate ) );
+
+        context.put( "dateFormat", base.newDateFormat() );
+
+        // user properties can override document data objects
+        Map<String, ?> templateProperties = siteRenderingContext.getTemplateProperties();
+
+        if ( templateProperties != null )
+        {
+            for ( String key : CONTEXT_DOCUMENT_KEYS )
+            {
+                if ( templateProperties.containsKey( key ) )
+                {
+                    context.put( key, templateProperties.get( key ) );
+                }
+            }
+        }
+
+        return context;
+    }
+
+    /**
+     * Get the site-invariant entries of document Velocity contexts, computed only once per site rendering context,
+     * unless it is modified.
+     *
+     * @param siteRenderingContext the site rendering context
+     * @return the site Velocity context base
+     */
+    private VelocityContextBase getVelocityContextBase( SiteRenderingContext siteRenderingContext )
+    {
+        DecorationModel decoration = siteRenderingContext.getDecoration();
+        PublishDate publishDate = decoration.getPublishDate();
+        Object[] key = new Object[] { decoration, publishDate.getFormat(), siteRenderingContext.getLocale(),
+            siteRenderingContext.getPublishDate(), siteRenderingContext.getTemplateProperties() };
+
+        synchronized ( siteRenderingContext )
+        {
+            VelocityContextBase base = siteRenderingContext.getVelocityContextBase();
 
-        context.put( "alignedFileName", PathTool.calculateLink( currentFileName, renderingContext.getRelativePath() ) );
+            if ( base != null && base.matches( key ) )
+            {
+                return base;
+            }
 
-        context.put( "decoration", siteRenderingContext.getDecoration() );
+            Map<String, Object> entries = new HashMap<String, Object>();
 
-        Locale locale = siteRenderingContext.getLocale();
-        context.put( "locale", locale );
-        context.put( "supportedLocales", Collections.unmodifiableList( siteRenderingContext.getSiteLocales() ) );
+            // ----------------------------------------------------------------------
+            // Data objects
+            // ----------------------------------------------------------------------
 
-        context.put( "currentDate", new Date() );
-        SimpleDateFormat sdf = new SimpleDateFormat( "yyyyMMdd" );
-        context.put( "dateRevision", sdf.format( new Date() ) );
+            entries.put( "decoration", decoration );
 
-        context.put( "publishDate", siteRenderingContext.getPublishDate() );
+            Locale locale = siteRenderingContext.getLocale();
+            entries.put( "locale", locale );
+            entries.put( "supportedLocales", Collections.unmodifiableList( siteRenderingContext.getSiteLocales() ) );
 
-        PublishDate publishDate = siteRenderingContext.getDecoration().getPublishDate();
-        DateFormat dateFormat = new SimpleDateFormat( publishDate.getFormat(), locale );
-        context.put( "dateFormat", dateFormat );
+            entries.put( "publishDate", siteRenderingContext.getPublishDate() );
 
-        // doxiaSiteRendererVersion
-        InputStream inputStream = this.getClass().getResourceAsStream( "/META-INF/"
-            + "maven/org.apache.maven.doxia/doxia-site-renderer/pom.properties" );
-        Properties properties = PropertyUtils.loadProperties( inputStream );
-        if ( inputStream == null )
-        {
-            getLogger().debug( "pom.properties for doxia-site-renderer could not be found." );
-        }
-        else if ( properties == null )
-        {
-            getLogger().debug( "Failed to load pom.properties, so doxiaVersion is not available"
-                + " in the Velocity context." );
-        }
-        else
-        {
-            context.put( "doxiaSiteRendererVersion", properties.getProperty( "version" ) );
-        }
+            // doxiaSiteRendererVersion
+            InputStream inputStream = this.getClass().getResourceAsStream( "/META-INF/"
+                + "maven/org.apache.maven.doxia/doxia-site-renderer/pom.properties" );
+            Properties properties = PropertyUtils.loadProperties( inputStream );
+            if ( inputStream == null )
+            {
+                getLogger().debug( "pom.properties for doxia-site-renderer could not be found." );
+            }
+            else if ( properties == null )
+            {
+                getLogger().debug( "Failed to load pom.properties, so doxiaVersion is not available"
+                    + " in the Velocity context." );
+            }
+            else
+            {
+                entries.put( "doxiaSiteRendererVersion", properties.getProperty( "version" ) );
+            }
 
-        // Add user properties
-        Map<String, ?> templateProperties = siteRenderingContext.getTemplateProperties();
+            // Add user properties
+            Map<String, ?> templateProperties = siteRenderingContext.getTemplateProperties();
 
-        if ( templateProperties != null )
-        {
-            for ( Map.Entry<String, ?> entry : templateProperties.entrySet() )
+            if ( templateProperties != null )
             {
-                context.put( entry.getKey(), entry.getValue() );
+                entries.putAll( templateProperties );
             }
-        }
 
-        // ----------------------------------------------------------------------
-        // Tools
-        // ----------------------------------------------------------------------
+            // ----------------------------------------------------------------------
+            // Tools
+            // ----------------------------------------------------------------------
 
-        context.put( "PathTool", new PathTool() );
+            entries.put( "PathTool", new PathTool() );
 
-        context.put( "FileUtils", new FileUtils() );
+            entries.put( "FileUtils", new FileUtils() );
 
-        context.put( "StringUtils", new StringUtils() );
+            entries.put( "StringUtils", new StringUtils() );
 
-        context.put( "i18n", i18n );
+            entries.put( "menuTool", new MenuTool( decoration ) );
 
-        context.put( "plexus", plexus );
-        return context;
+            entries.put( "i18n", i18n );
+
+            entries.put( "plexus", plexus );
+
+            base = new VelocityContextBase( key, entries, new SimpleDateFormat( publishDate.getFormat(), locale ),
+                                            new SimpleDateFormat( "yyyyMMdd" ) );
+
+            siteRenderingContext.setVelocityContextBase( base );
+
+            return base;
+        }
     }
 
     /**
@@ -651,9 +1428,40 @@ public class DefaultSiteRenderer
 
         context.put( "title", title );
 
-        context.put( "headContent", content.getHead() );
+        if ( content instanceof StreamableDocumentContent )
+        {
+            RenderableContent headContent = ( (StreamableDocumentContent) content ).getHeadContent();
+            RenderableContent bodyContent = ( (StreamableDocumentContent) content ).getBodyContent();
+
+            // written directly to the template output, without creating strings
+            context.put( "headContentStream", headContent );
+
+            context.put( "bodyContentStream", bodyContent );
+
+            // strings, that templates may pass to methods: created only if the template reads them
+            if ( context instanceof SiteToolManager.SiteToolContext )
+            {
+                ( (SiteToolManager.SiteToolContext) context ).putString( "headContent", headContent );
+
+                ( (SiteToolManager.SiteToolContext) context ).putString( "bodyContent", bodyContent );
+            }
+            else
+            {
+                context.put( "headContent", headContent.toString() );
+
+                context.put( "bodyContent", bodyContent.toString() );
+            }
+        }
+        else
+        {
+            context.put( "headContent", content.getHead() );
 
-        context.put( "bodyContent", content.getBody() );
+            context.put( "bodyContent", content.getBody() );
+
+            context.put( "headContentStream", content.getHead() );
+
+            context.put( "bodyContentStream", content.getBody() );
+        }
 
         // document date (got from Doxia Sink date() API)
         String documentDate = content.getDate();
@@ -701,73 +1509,109 @@ public class DefaultSiteRenderer
     {
         String templateName = siteRenderingContext.getTemplateName();
 
-        getLogger().debug( "Processing Velocity for template " + templateName + " on "
+        getLogger().debug( "Processing template " + templateName + " on "
             + content.getRenderingContext().getInputName() );
 
-        Context context = createSiteTemplateVelocityContext( content, siteRenderingContext );
+        Context context = trackDependencies( content.getRenderingContext(),
+                                             createSiteTemplateVelocityContext( content, siteRenderingContext ) );
 
-        ClassLoader old = null;
+        SiteTemplate siteTemplate = getSiteTemplate( siteRenderingContext );
 
-        if ( siteRenderingContext.getTemplateClassLoader() != null )
+        RenderingDependencies dependencies = getRenderingDependencies( content.getRenderingContext() );
+        if ( dependencies != null )
         {
-            // -------------------------------------------------------------------------
-            // If no template classloader was set we'll just use the context classloader
-            // -------------------------------------------------------------------------
+            for ( URL resource : siteTemplate.getResources() )
+            {
+                dependencies.add( resource );
+            }
+        }
 
-            old = Thread.currentThread().getContextClassLoader();
+        try
+        {
+            Writer out = new LineSeparatorWriter( writer, SystemUtils.LINE_SEPARATOR );
+            siteTemplate.merge( context, out );
+            out.close();
+        }
+        catch ( IOException ioe )
+        {
+            throw new RendererException( "IO exception while merging site decoration template.", ioe );
+        }
+        finally
+        {
+            IOUtil.close( writer );
+        }
+    }
 
-            Thread.currentThread().setContextClassLoader( siteRenderingContext.getTemplateClassLoader() );
+    /**
+     * Get the site decoration template: it is looked up and loaded by its template engine only once per site
+     * rendering context, unless its template engine, name, classloader or skin encoding changes.
+     *
+     * @param siteRenderingContext the site rendering context
+     * @return the loaded site decoration template
+     * @throws RendererException if the template engine is unknown, or the template cannot be found or loaded
+     */
+    private SiteTemplate getSiteTemplate( SiteRenderingContext siteRenderingContext )
+        throws RendererException
+    {
+        String templateEngine = siteRenderingContext.getTemplateEngine();
+        if ( StringUtils.isEmpty( templateEngine ) )
+        {
+            templateEngine = SiteTemplateEngine.DEFAULT_ENGINE;
         }
+        String templateName = siteRenderingContext.getTemplateName();
+        ClassLoader templateClassLoader = siteRenderingContext.getTemplateClassLoader();
+        SkinModel skinModel = siteRenderingContext.getSkinModel();
+        String encoding = ( skinModel == null ) ? null : skinModel.getEncoding();
 
-        try
+        List<Object> key = Arrays.<Object>asList( templateEngine, templateName, templateClassLoader, encoding );
+
+        synchronized ( siteRenderingContext )
         {
-            Template template;
-            Artifact skin = siteRenderingContext.getSkin();
+            SiteTemplate siteTemplate = siteRenderingContext.getSiteTemplate();
 
-            try
+            if ( siteTemplate != null && key.equals( siteRenderingContext.getSiteTemplateKey() ) )
             {
-                SkinModel skinModel = siteRenderingContext.getSkinModel();
-                String encoding = ( skinModel == null ) ? null : skinModel.getEncoding();
-
-                template = ( encoding == null ) ? velocity.getEngine().getTemplate( templateName )
-                                : velocity.getEngine().getTemplate( templateName, encoding );
+                return siteTemplate;
             }
-            catch ( ParseErrorException pee )
+
+            SiteTemplateEngine engine;
+            try
             {
-                throw new RendererException( "Velocity parsing error while reading the site decoration template "
-                    + ( ( skin == null ) ? ( "'" + templateName + "'" ) : ( "from " + skin.getId() + " skin" ) ),
-                                             pee );
+                engine = (SiteTemplateEngine) plexus.lookup( SiteTemplateEngine.ROLE, templateEngine );
             }
-            catch ( ResourceNotFoundException rnfe )
+            catch ( ComponentLookupException cle )
             {
-                throw new RendererException( "Could not find the site decoration template "
-                    + ( ( skin == null ) ? ( "'" + templateName + "'" ) : ( "from " + skin.getId() + " skin" ) ),
-                                             rnfe );
+                throw new RendererException( "Unknown site template engine '" + templateEngine + "'", cle );
             }
 
-            try
+            ClassLoader old = null;
+
+            if ( templateClassLoader != null )
             {
-                StringWriter sw = new StringWriter();
-                template.merge( context, sw );
-                writer.write( sw.toString().replaceAll( "\r?\n", SystemUtils.LINE_SEPARATOR ) );
+                // -------------------------------------------------------------------------
+                // If no template classloader was set we'll just use the context classloader
+                // -------------------------------------------------------------------------
+
+                old = Thread.currentThread().getContextClassLoader();
+
+                Thread.currentThread().setContextClassLoader( templateClassLoader );
             }
-            catch ( VelocityException ve )
+
+            try
             {
-                throw new RendererException( "Velocity error while merging site decoration template.", ve );
+                siteTemplate = engine.loadTemplate( siteRenderingContext );
             }
-            catch ( IOException ioe )
+            finally
             {
-                throw new RendererException( "IO exception while merging site decoration template.", ioe );
+                if ( old != null )
+                {
+                    Thread.currentThread().setContextClassLoader( old );
+                }
             }
-        }
-        finally
-        {
-            IOUtil.close( writer );
 
-            if ( old != null )
-            {
-                Thread.currentThread().setContextClassLoader( old );
-            }
+            siteRenderingContext.setSiteTemplate( siteTemplate, key );
+
+            return siteTemplate;
         }
     }
 
@@ -794,54 +1638,68 @@ public class DefaultSiteRenderer
 
         context.setSkin( skin );
 
-        ZipFile zipFile = getZipFile( skin.getFile() );
-        InputStream in = null;
-
+        SkinArchive skinArchive;
         try
         {
-            if ( zipFile.getEntry( SKIN_TEMPLATE_LOCATION ) != null )
-            {
-                context.setTemplateName( SKIN_TEMPLATE_LOCATION );
-                context.setTemplateClassLoader( new URLClassLoader( new URL[]{skin.getFile().toURI().toURL()} ) );
-            }
-            else
-            {
-                context.setTemplateName( DEFAULT_TEMPLATE );
-                context.setTemplateClassLoader( getClass().getClassLoader() );
-                context.setUsingDefaultTemplate( true );
-            }
+            skinArchive = skinRegistry.get( skin.getFile() );
+        }
+        catch ( XmlPullParserException e )
+        {
+            throw new RendererException( "Failed to parse " + SkinModel.SKIN_DESCRIPTOR_LOCATION
+                + " skin descriptor from " + skin.getId() + " skin", e );
+        }
 
-            ZipEntry skinDescriptorEntry = zipFile.getEntry( SkinModel.SKIN_DESCRIPTOR_LOCATION );
-            if ( skinDescriptorEntry != null )
-            {
-                in = zipFile.getInputStream( skinDescriptorEntry );
+        SkinModel skinModel = skinArchive.getSkinModel();
+
+        if ( skinModel != null && StringUtils.isNotEmpty( skinModel.getTemplate() ) )
+        {
+            context.setTemplateEngine( skinModel.getTemplateEngine() );
+            context.setTemplateName( skinModel.getTemplate() );
+            context.setTemplateClassLoader( skinArchive.getClassLoader() );
+        }
+        else if ( skinArchive.hasEntry( SKIN_TEMPLATE_LOCATION ) )
+        {
+            context.setTemplateName( SKIN_TEMPLATE_LOCATION );
+            context.setTemplateClassLoader( skinArchive.getClassLoader() );
+        }
+        else
+        {
+            context.setTemplateName( DEFAULT_TEMPLATE );
+            context.setTemplateClassLoader( getClass().getClassLoader() );
+            context.setUsingDefaultTemplate( true );
+        }
 
-                SkinModel skinModel = new SkinXpp3Reader().read( in );
-                context.setSkinModel( skinModel );
+        if ( skinModel != null )
+        {
+            context.setSkinModel( skinModel );
 
-                String toolsPrerequisite =
-                    skinModel.getPrerequisites() == null ? null : skinModel.getPrerequisites().getDoxiaSitetools();
+            String toolsPrerequisite =
+                skinModel.getPrerequisites() == null ? null : skinModel.getPrerequisites().getDoxiaSitetools();
 
-                Package p = DefaultSiteRenderer.class.getPackage();
-                String current = ( p == null ) ? null : p.getImplementationVersion();
+            Package p = DefaultSiteRenderer.class.getPackage();
+            String current = ( p == null ) ? null : p.getImplementationVersion();
 
-                if ( StringUtils.isNotBlank( toolsPrerequisite ) && ( current != null )
-                    && !matchVersion( current, toolsPrerequisite ) )
-                {
-                    throw new RendererException( "Cannot use skin: has " + toolsPrerequisite
-                        + " Doxia Sitetools prerequisite, but current is " + current );
-                }
+            if ( StringUtils.isNotBlank( toolsPrerequisite ) && ( current != null )
+                && !matchVersion( current, toolsPrerequisite ) )
+            {
+                throw new RendererException( "Cannot use skin: has " + toolsPrerequisite
+                    + " Doxia Sitetools prerequisite, but current is " + current );
             }
         }
-        catch ( XmlPullParserException e )
+
+        // load the site decoration template once for every module using the skin
+        if ( !context.isUsingDefaultTemplate() )
         {
-            throw new RendererException( "Failed to parse " + SkinModel.SKIN_DESCRIPTOR_LOCATION
-                + " skin descriptor from " + skin.getId() + " skin", e );
+            synchronized ( skinArchive )
+            {
+                context.setSiteTemplate( skinArchive.getSiteTemplate(), skinArchive.getSiteTemplateKey() );
+            }
+            SiteTemplate siteTemplate = getSiteTemplate( context );
+            skinArchive.setSiteTemplate( siteTemplate, context.getSiteTemplateKey() );
         }
-        finally
+        else
         {
-            IOUtil.close( in );
-            closeZipFile( zipFile );
+            getSiteTemplate( context );
         }
 
         return context;
@@ -920,40 +1778,31 @@ public class DefaultSiteRenderer
     {
         if ( siteRenderingContext.getSkin() != null )
         {
-            ZipFile file = getZipFile( siteRenderingContext.getSkin().getFile() );
+            SkinArchive skinArchive = getSkinArchive( siteRenderingContext.getSkin() );
 
-            try
+            // don't override existing content: avoids extra rewrite with same content or extra site resource
+            SkinResourceExtractor extractor = new SkinResourceExtractor( skinArchive, outputDirectory );
+
+            // open the skin only if some resources are not yet in the output directory
+            if ( !extractor.getOutdatedEntries().isEmpty() )
             {
-                for ( Enumeration<? extends ZipEntry> e = file.entries(); e.hasMoreElements(); )
+                if ( getLogger().isDebugEnabled() )
                 {
-                    ZipEntry entry = e.nextElement();
-
-                    if ( !entry.getName().startsWith( "META-INF/" ) )
-                    {
-                        File destFile = new File( outputDirectory, entry.getName() );
-                        if ( !entry.isDirectory() )
-                        {
-                            if ( destFile.exists() )
-                            {
-                                // don't override existing content: avoids extra rewrite with same content or extra site
-                                // resource
-                                continue;
-                            }
+                    getLogger().debug( "Extracting " + extractor.getOutdatedEntries().size() + " resources from "
+                        + siteRenderingContext.getSkin().getId() + " skin" );
+                }
 
-                            destFile.getParentFile().mkdirs();
+                ZipFile file = getZipFile( skinArchive.getFile() );
 
-                            copyFileFromZip( file, entry, destFile );
-                        }
-                        else
-                        {
-                            destFile.mkdirs();
-                        }
-                    }
+                try
+                {
+                    invokeAll( extractor.createTasks( file, siteRenderingContext.getRenderThreads() ),
+                               siteRenderingContext.getRenderThreads() );
+                }
+                finally
+                {
+                    closeZipFile( file );
                 }
-            }
-            finally
-            {
-                closeZipFile( file );
             }
         }
 
@@ -1031,7 +1880,7 @@ public class DefaultSiteRenderer
 
             if ( resourcesDirectory != null && resourcesDirectory.exists() )
             {
-                copyDirectory( resourcesDirectory, outputDirectory );
+                copyDirectory( resourcesDirectory, outputDirectory, siteRenderingContext.getRenderThreads() );
             }
         }
 
@@ -1059,7 +1908,7 @@ public class DefaultSiteRenderer
             {
                 writer = WriterFactory.newWriter( siteCssFile, siteRenderingContext.getOutputEncoding() );
                 //DOXIA-290...the file should not be 0 bytes.
-                writer.write( "/* You can override this file with your own styles */"  );
+                writer.write( DEFAULT_SITE_CSS );
             }
             finally
             {
@@ -1068,18 +1917,107 @@ public class DefaultSiteRenderer
         }
     }
 
-    private static void copyFileFromZip( ZipFile file, ZipEntry entry, File destFile )
-            throws IOException
+    /**
+     * Run file tasks, with at most the given number of threads: sequentially for a single thread.
+     *
+     * @param tasks the tasks to run
+     * @param threads the maximum number of threads
+     * @return the task results, in tasks order
+     * @throws IOException if a task failed
+     */
+    private <T> List<T> invokeAll( List<? extends Callable<T>> tasks, int threads )
+        throws IOException
     {
-        FileOutputStream fos = new FileOutputStream( destFile );
+        List<T> results = new ArrayList<T>( tasks.size() );
+
+        if ( threads <= 1 || tasks.size() <= 1 )
+        {
+            for ( Callable<T> task : tasks )
+            {
+                try
+                {
+                    results.add( task.call() );
+                }
+                catch ( IOException e )
+                {
+                    throw e;
+                }
+                catch ( RuntimeException e )
+                {
+                    throw e;
+                }
+                catch ( Exception e )
+                {
+                    throw new IOException( e.getMessage(), e );
+                }
+            }
+
+            return results;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool( Math.min( threads, tasks.size() ),
+                                                                 new RenderThreadFactory( Thread.currentThread() ) );
 
         try
         {
-            IOUtil.copy( file.getInputStream( entry ), fos );
+            for ( Future<T> future : executor.invokeAll( tasks ) )
+            {
+                try
+                {
+                    results.add( future.get() );
+                }
+                catch ( ExecutionException e )
+                {
+                    Throwable cause = e.getCause();
+                    if ( cause instanceof IOException )
+                    {
+                        throw (IOException) cause;
+                    }
+                    if ( cause instanceof RuntimeException )
+                    {
+                        throw (RuntimeException) cause;
+                    }
+                    if ( cause instanceof Error )
+                    {
+                        throw (Error) cause;
+                    }
+                    throw new IOException( cause.getMessage(), cause );
+                }
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "Interrupted while reading or copying files" );
         }
         finally
         {
-            IOUtil.close( fos );
+            executor.shutdownNow();
+        }
+
+        return results;
+    }
+
+    /**
+     * Get the content of a skin, read only once for every module of a build.
+     *
+     * @param skin the skin artifact
+     * @return the skin archive content
+     * @throws IOException if the skin cannot be read
+     */
+    SkinArchive getSkinArchive( Artifact skin )
+        throws IOException
+    {
+        try
+        {
+            return skinRegistry.get( skin.getFile() );
+        }
+        catch ( XmlPullParserException e )
+        {
+            IOException ioe = new IOException( "Failed to parse " + SkinModel.SKIN_DESCRIPTOR_LOCATION
+                + " skin descriptor from " + skin.getId() + " skin" );
+            ioe.initCause( e );
+            throw ioe;
         }
     }
 
@@ -1092,50 +2030,93 @@ public class DefaultSiteRenderer
      */
     protected void copyDirectory( File source, File destination )
             throws IOException
+    {
+        copyDirectory( source, destination, 1 );
+    }
+
+    /**
+     * Copy the directory content that changed since a previous copy: files with the same size and modification
+     * time in the destination directory are skipped. Used by <code>copyResources</code> to copy site resources.
+     *
+     * @param source      source file to be copied
+     * @param destination destination file
+     * @param threads     the number of threads to copy files with
+     * @throws java.io.IOException if any
+     * @since 1.9.3
+     */
+    protected void copyDirectory( File source, File destination, int threads )
+            throws IOException
     {
         if ( source.exists() )
         {
-            DirectoryScanner scanner = new DirectoryScanner();
-
-            String[] includedResources = {"**/**"};
-
-            scanner.setIncludes( includedResources );
-
-            scanner.addDefaultExcludes();
-
-            scanner.setBasedir( source );
-
-            scanner.scan();
+            DirectorySynchronizer synchronizer = new DirectorySynchronizer( source, destination );
 
-            List<String> includedFiles = Arrays.asList( scanner.getIncludedFiles() );
-
-            for ( String name : includedFiles )
+            if ( !synchronizer.getOutdatedFiles().isEmpty() )
             {
-                File sourceFile = new File( source, name );
-
-                File destinationFile = new File( destination, name );
+                invokeAll( synchronizer.createTasks( threads ), threads );
+            }
 
-                FileUtils.copyFile( sourceFile, destinationFile );
+            if ( getLogger().isDebugEnabled() )
+            {
+                getLogger().debug( "Copied " + synchronizer.getOutdatedFiles().size() + " resources from " + source
+                    + ", skipped " + synchronizer.getSkippedCount() + " unchanged" );
             }
         }
     }
 
-    private Reader validate( Reader source, String resource )
-            throws ParseException, IOException
+    /**
+     * Start validating an XML document in a separate thread.
+     */
+    private Future<Void> validate( final Reader source, String resource )
     {
         getLogger().debug( "Validating: " + resource );
 
-        try
+        final Log log = new PlexusLoggerWrapper( getLogger() );
+
+        return getPreprocessingExecutor().submit( new Callable<Void>()
         {
-            String content = IOUtil.toString( new BufferedReader( source ) );
+            public Void call()
+                throws ParseException, IOException
+            {
+                xmlValidator.validate( source, log );
+                return null;
+            }
+        } );
+    }
 
-            new XmlValidator( new PlexusLoggerWrapper( getLogger() ) ).validate( content );
+    /**
+     * Wait for the end of the validation of a document, and report its failure.
+     */
+    private void awaitValidation( Future<Void> validation, File doc )
+        throws RendererException
+    {
+        if ( validation == null )
+        {
+            return;
+        }
 
-            return new StringReader( content );
+        try
+        {
+            validation.get();
         }
-        finally
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new RendererException( "Interrupted while validating '" + doc + "'", e );
+        }
+        catch ( ExecutionException e )
         {
-            IOUtil.close( source );
+            Throwable cause = e.getCause();
+            if ( cause instanceof ParseException )
+            {
+                throw new RendererException( "Error parsing '" + doc + "': line ["
+                    + ( (ParseException) cause ).getLineNumber() + "] " + cause.getMessage(), cause );
+            }
+            if ( cause instanceof Error )
+            {
+                throw (Error) cause;
+            }
+            throw new RendererException( "Error validating '" + doc + "': " + cause.getMessage(), cause );
         }
     }
 
@@ -1183,4 +2164,29 @@ public class DefaultSiteRenderer
             // ignore
         }
     }
+
+    /**
+     * Thread factory for parallel rendering: rendering threads use the same context classloader as the thread
+     * that started the rendering, since Velocity resources are loaded from it.
+     */
+    private static class RenderThreadFactory
+        implements ThreadFactory
+    {
+        private final AtomicInteger count = new AtomicInteger();
+
+        private final ClassLoader contextClassLoader;
+
+        RenderThreadFactory( Thread parent )
+        {
+            this.contextClassLoader = parent.getContextClassLoader();
+        }
+
+        public Thread newThread( Runnable r )
+        {
+            Thread thread = new Thread( r, "doxia-site-renderer-" + count.incrementAndGet() );
+            thread.setDaemon( true );
+            thread.setContextClassLoader( contextClassLoader );
+            return thread;
+        }
+    }
 }
@@ -0,0 +1,71 @@
+package org.apache.maven.doxia.siterenderer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.velocity.context.AbstractContext;
+import org.apache.velocity.context.Context;
+
+/**
+ * A Velocity context storing content in the wrapped context: contrary to a chained context, values put during
+ * template merge are visible to tools that keep a reference to the wrapped context.
+ * Being an <code>InternalEventContext</code>, it accepts an event cartridge whatever the wrapped context type.
+ *
+ * @since 1.9.3
+ */
+class DelegatingContext
+    extends AbstractContext
+{
+    private final Context context;
+
+    DelegatingContext( Context context )
+    {
+        this.context = context;
+    }
+
+    @Override
+    public Object internalGet( String key )
+    {
+        return context.get( key );
+    }
+
+    @Override
+    public Object internalPut( String key, Object value )
+    {
+        return context.put( key, value );
+    }
+
+    @Override
+    public boolean internalContainsKey( Object key )
+    {
+        return context.containsKey( key );
+    }
+
+    @Override
+    public Object[] internalGetKeys()
+    {
+        return context.getKeys();
+    }
+
+    @Override
+    public Object internalRemove( Object key )
+    {
+        return context.remove( key );
+    }
+}
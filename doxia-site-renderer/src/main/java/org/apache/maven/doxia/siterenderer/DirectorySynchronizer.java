@@ -0,0 +1,171 @@
+package org.apache.maven.doxia.siterenderer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import org.codehaus.plexus.util.DirectoryScanner;
+
+/**
+ * Copies a directory content to another one, skipping files that were already copied: a destination file is
+ * up to date if it has the same size and modification time as the source file, which is kept on copy.
+ *
+ * @since 1.9.3
+ */
+class DirectorySynchronizer
+{
+    private final File source;
+
+    private final File destination;
+
+    private final List<String> outdatedFiles = new ArrayList<String>();
+
+    private int skippedCount;
+
+    /**
+     * Find files to copy, and create destination directories.
+     *
+     * @param source the source directory
+     * @param destination the destination directory
+     * @throws IOException if a file cannot be read
+     */
+    DirectorySynchronizer( File source, File destination )
+        throws IOException
+    {
+        this.source = source;
+        this.destination = destination;
+
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setIncludes( new String[] { "**/**" } );
+        scanner.addDefaultExcludes();
+        scanner.setBasedir( source );
+        scanner.scan();
+
+        Set<File> directories = new LinkedHashSet<File>();
+
+        for ( String name : scanner.getIncludedFiles() )
+        {
+            File destinationFile = new File( destination, name );
+
+            if ( isUpToDate( new File( source, name ).toPath(), destinationFile.toPath() ) )
+            {
+                skippedCount++;
+            }
+            else
+            {
+                directories.add( destinationFile.getParentFile() );
+                outdatedFiles.add( name );
+            }
+        }
+
+        // create each directory once, before concurrent copy
+        for ( File directory : directories )
+        {
+            directory.mkdirs();
+        }
+    }
+
+    /**
+     * @return the relative path of files to copy
+     */
+    List<String> getOutdatedFiles()
+    {
+        return outdatedFiles;
+    }
+
+    /**
+     * @return the count of files skipped since already up to date
+     */
+    int getSkippedCount()
+    {
+        return skippedCount;
+    }
+
+    /**
+     * Create copy tasks for outdated files, to be run concurrently.
+     *
+     * @param taskCount the maximum number of tasks
+     * @return the copy tasks
+     */
+    List<Callable<Void>> createTasks( int taskCount )
+    {
+        int count = Math.max( 1, Math.min( taskCount, outdatedFiles.size() ) );
+
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>( count );
+
+        for ( int i = 0; i < count; i++ )
+        {
+            final List<String> names = new ArrayList<String>();
+            for ( int j = i; j < outdatedFiles.size(); j += count )
+            {
+                names.add( outdatedFiles.get( j ) );
+            }
+
+            tasks.add( new Callable<Void>()
+            {
+                public Void call()
+                    throws IOException
+                {
+                    for ( String name : names )
+                    {
+                        Files.copy( new File( source, name ).toPath(), new File( destination, name ).toPath(),
+                                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES );
+                    }
+
+                    return null;
+                }
+            } );
+        }
+
+        return tasks;
+    }
+
+    private static boolean isUpToDate( Path sourceFile, Path destinationFile )
+        throws IOException
+    {
+        BasicFileAttributes destinationAttributes;
+        try
+        {
+            destinationAttributes =
+                Files.readAttributes( destinationFile, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS );
+        }
+        catch ( NoSuchFileException e )
+        {
+            return false;
+        }
+
+        BasicFileAttributes sourceAttributes = Files.readAttributes( sourceFile, BasicFileAttributes.class );
+
+        return destinationAttributes.isRegularFile() && destinationAttributes.size() == sourceAttributes.size()
+            && destinationAttributes.lastModifiedTime().toMillis() == sourceAttributes.lastModifiedTime().toMillis();
+    }
+}
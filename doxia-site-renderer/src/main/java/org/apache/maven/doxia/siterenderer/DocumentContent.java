@@ -23,6 +23,12 @@ import java.util.List;
 
 /**
  * Document content, that will be merged into a site template.
+ * <p>
+ * The content given to {@link Renderer#mergeDocumentIntoSite(java.io.Writer, DocumentContent, SiteRenderingContext)}
+ * is only available during this call: a {@link org.apache.maven.doxia.siterenderer.sink.SiteRendererSink} is
+ * released by the renderer once merged, then {@link #getHead()} and {@link #getBody()} throw an
+ * <code>IllegalStateException</code>.
+ * </p>
  *
  * @since 1.8
  */
@@ -0,0 +1,175 @@
+package org.apache.maven.doxia.siterenderer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.velocity.Template;
+import org.apache.velocity.runtime.RuntimeServices;
+import org.apache.velocity.runtime.parser.ParseException;
+
+/**
+ * Cache of the templates evaluated with <code>$render.eval</code>, parsed once and merged with every page context.
+ * Templates are looked up by content: a snippet evaluated for every page, like <code>$decoration.body.head</code>, is
+ * the same string instance, which is found without comparing its characters. Snippets that fail to parse are
+ * remembered, to be parsed only once.
+ *
+ * @see CachingRenderTool
+ * @since 1.9.3
+ */
+class EvalCache
+{
+    /**
+     * Count of cached templates: content evaluated once per page, like document dependent strings, is not cached once
+     * this count is reached.
+     */
+    private static final int MAX_SIZE = 256;
+
+    /**
+     * Snippets longer than this are not cached.
+     */
+    private static final int MAX_LENGTH = 64 * 1024;
+
+    private final ConcurrentMap<String, Entry> templates = new ConcurrentHashMap<String, Entry>();
+
+    private final Set<String> invalid = Collections.newSetFromMap( new ConcurrentHashMap<String, Boolean>() );
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong parseTime = new AtomicLong();
+
+    private final AtomicLong parseTimeSaved = new AtomicLong();
+
+    /**
+     * Get the parsed template of a snippet, parsing it if not cached yet.
+     *
+     * @param rsvc the Velocity runtime to parse templates with
+     * @param vtl the snippet to evaluate
+     * @return the parsed template
+     * @throws ParseException if the snippet is not a valid Velocity template
+     */
+    Template getTemplate( RuntimeServices rsvc, String vtl )
+        throws ParseException
+    {
+        Entry entry = templates.get( vtl );
+        if ( entry != null && entry.rsvc == rsvc )
+        {
+            hits.incrementAndGet();
+            parseTimeSaved.addAndGet( entry.parseTime );
+            return entry.template;
+        }
+
+        misses.incrementAndGet();
+
+        long start = System.nanoTime();
+
+        Template template = new Template();
+        template.setName( "RenderTool.eval()" );
+        template.setRuntimeServices( rsvc );
+        try
+        {
+            template.setData( rsvc.parse( new StringReader( vtl ), template.getName() ) );
+        }
+        catch ( ParseException e )
+        {
+            parseTime.addAndGet( System.nanoTime() - start );
+            if ( vtl.length() <= MAX_LENGTH && invalid.size() < MAX_SIZE )
+            {
+                invalid.add( vtl );
+            }
+            throw e;
+        }
+        template.initDocument();
+
+        long time = System.nanoTime() - start;
+        parseTime.addAndGet( time );
+
+        if ( vtl.length() <= MAX_LENGTH && ( templates.size() < MAX_SIZE || entry != null ) )
+        {
+            templates.put( vtl, new Entry( rsvc, template, time ) );
+        }
+
+        return template;
+    }
+
+    /**
+     * @param vtl a snippet to evaluate
+     * @return <code>true</code> if the snippet already failed to parse
+     */
+    boolean isInvalid( String vtl )
+    {
+        return invalid.contains( vtl );
+    }
+
+    /**
+     * @return count of evaluations with a cached template
+     */
+    long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * @return count of evaluations that parsed their template
+     */
+    long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * @return total time spent parsing templates, in nanoseconds
+     */
+    long getParseTime()
+    {
+        return parseTime.get();
+    }
+
+    /**
+     * @return total time that parsing templates found in the cache would have taken, in nanoseconds
+     */
+    long getParseTimeSaved()
+    {
+        return parseTimeSaved.get();
+    }
+
+    private static class Entry
+    {
+        private final RuntimeServices rsvc;
+
+        private final Template template;
+
+        private final long parseTime;
+
+        Entry( RuntimeServices rsvc, Template template, long parseTime )
+        {
+            this.rsvc = rsvc;
+            this.template = template;
+            this.parseTime = parseTime;
+        }
+    }
+}
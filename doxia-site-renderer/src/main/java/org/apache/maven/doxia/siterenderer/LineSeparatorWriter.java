@@ -0,0 +1,159 @@
+package org.apache.maven.doxia.siterenderer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writer that converts Unix (<code>\n</code>) and Windows (<code>\r\n</code>) newlines to a line separator on the
+ * fly, without buffering the whole content: equivalent to <code>replaceAll( "\r?\n", lineSeparator )</code> on the
+ * written content. Lone <code>\r</code> are kept as-is.
+ *
+ * @since 1.9.3
+ */
+class LineSeparatorWriter
+    extends FilterWriter
+{
+    private final String lineSeparator;
+
+    /**
+     * Was the last written character a <code>\r</code>, not written yet since it may be followed by <code>\n</code>?
+     */
+    private boolean pendingCR;
+
+    /**
+     * @param out the writer to write converted content to
+     * @param lineSeparator the line separator to write instead of newlines
+     */
+    LineSeparatorWriter( Writer out, String lineSeparator )
+    {
+        super( out );
+        this.lineSeparator = lineSeparator;
+    }
+
+    @Override
+    public void write( int c )
+        throws IOException
+    {
+        if ( pendingCR )
+        {
+            pendingCR = false;
+            if ( c == '\n' )
+            {
+                out.write( lineSeparator );
+                return;
+            }
+            out.write( '\r' );
+        }
+
+        if ( c == '\r' )
+        {
+            pendingCR = true;
+        }
+        else if ( c == '\n' )
+        {
+            out.write( lineSeparator );
+        }
+        else
+        {
+            out.write( c );
+        }
+    }
+
+    @Override
+    public void write( char[] cbuf, int off, int len )
+        throws IOException
+    {
+        int end = off + len;
+        int start = off;
+
+        for ( int i = off; i < end; i++ )
+        {
+            char c = cbuf[i];
+            if ( c == '\n' || c == '\r' || pendingCR )
+            {
+                if ( i > start )
+                {
+                    out.write( cbuf, start, i - start );
+                }
+                write( c );
+                start = i + 1;
+            }
+        }
+
+        if ( end > start )
+        {
+            out.write( cbuf, start, end - start );
+        }
+    }
+
+    @Override
+    public void write( String str, int off, int len )
+        throws IOException
+    {
+        int end = off + len;
+        int start = off;
+
+        for ( int i = off; i < end; i++ )
+        {
+            char c = str.charAt( i );
+            if ( c == '\n' || c == '\r' || pendingCR )
+            {
+                if ( i > start )
+                {
+                    out.write( str, start, i - start );
+                }
+                write( c );
+                start = i + 1;
+            }
+        }
+
+        if ( end > start )
+        {
+            out.write( str, start, end - start );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * A pending <code>\r</code> is not flushed, since it may be followed by a <code>\n</code>: it is written on close.
+     */
+    @Override
+    public void flush()
+        throws IOException
+    {
+        out.flush();
+    }
+
+    @Override
+    public void close()
+        throws IOException
+    {
+        if ( pendingCR )
+        {
+            pendingCR = false;
+            out.write( '\r' );
+        }
+        out.close();
+    }
+}
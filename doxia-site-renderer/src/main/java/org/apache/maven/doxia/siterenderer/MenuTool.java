@@ -0,0 +1,311 @@
+package org.apache.maven.doxia.siterenderer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.maven.doxia.site.decoration.DecorationModel;
+import org.apache.maven.doxia.site.decoration.DecorationUtils;
+import org.apache.maven.doxia.site.decoration.Menu;
+import org.apache.maven.doxia.site.decoration.MenuItem;
+import org.apache.maven.doxia.site.decoration.MenuPathIndex;
+import org.codehaus.plexus.util.PathTool;
+
+/**
+ * Velocity tool rendering site menus, available in site templates as <code>$menuTool</code>: it produces the same
+ * HTML as the <code>#mainMenu</code> macro of <code>default-site-macros.vm</code>, without interpreting the
+ * recursive <code>#menuItem</code> and <code>#displayTree</code> macros for every menu item of every page.
+ * Links of menu items are computed once per relative path, and expanded items are found with the
+ * {@link MenuPathIndex} of the decoration model, like the macro does, instead of walking the menu tree.
+ * <p>
+ * Example: <code>$menuTool.mainMenu( $decoration.body.menus, $relativePath, $alignedFileName )</code>
+ * </p>
+ *
+ * @since 1.9.3
+ */
+public class MenuTool
+{
+    private final DecorationModel decoration;
+
+    /**
+     * Links of the menu items of the decoration model, by relative path.
+     */
+    private final Map<String, MenuLinks> links = new ConcurrentHashMap<String, MenuLinks>();
+
+    /**
+     * @param decoration the site decoration model, whose menus links are cached by relative path
+     */
+    public MenuTool( DecorationModel decoration )
+    {
+        this.decoration = decoration;
+    }
+
+    /**
+     * Render menus like the <code>#mainMenu</code> macro.
+     *
+     * @param menus the menus to render
+     * @param relativePath the relative path of the current page to the site root
+     * @param alignedFileName the current page file name, relative to the relative path
+     * @return the menus HTML
+     */
+    public String mainMenu( List<Menu> menus, String relativePath, String alignedFileName )
+    {
+        if ( menus == null )
+        {
+            return "";
+        }
+
+        MenuLinks menuLinks = links.get( relativePath );
+        if ( menuLinks == null || menuLinks.menus != menus )
+        {
+            menuLinks = new MenuLinks( menus, relativePath );
+            if ( decoration.getBody() != null && menus == decoration.getBody().getMenus() )
+            {
+                links.put( relativePath, menuLinks );
+            }
+        }
+
+        MenuPathIndex index = decoration.getMenuPathIndex();
+
+        StringBuilder html = new StringBuilder( 1024 );
+
+        for ( Menu menu : menus )
+        {
+            if ( menu.getName() != null )
+            {
+                if ( menu.getImg() != null )
+                {
+                    appendMenuTitle( html, menu, relativePath );
+                }
+                else
+                {
+                    html.append( "       <h5>" ).append( menu.getName() ).append( "</h5>\n" );
+                }
+            }
+
+            if ( menu.getItems() != null && menu.getItems().size() > 0 )
+            {
+                html.append( "    <ul>\n" );
+                for ( MenuItem item : menu.getItems() )
+                {
+                    appendMenuItem( html, item, "", menuLinks, index, alignedFileName, relativePath );
+                }
+                html.append( "    </ul>\n" );
+            }
+        }
+
+        return html.toString();
+    }
+
+    private static void appendMenuTitle( StringBuilder html, Menu menu, String relativePath )
+    {
+        StringBuilder img = new StringBuilder( "<img class=\"imageLink\"" );
+        img.append( " src=\"" ).append( toLink( menu.getImg(), relativePath ) ).append( '"' );
+        img.append( " alt=\"" ).append( ( menu.getAlt() != null ) ? menu.getAlt() : menu.getName() ).append( '"' );
+        img.append( " border=\"" ).append( ( menu.getBorder() != null ) ? menu.getBorder() : "0" ).append( '"' );
+        appendAttribute( img, "width", menu.getWidth() );
+        appendAttribute( img, "height", menu.getHeight() );
+        appendAttribute( img, "title", menu.getTitle() );
+        img.append( "/>" );
+
+        if ( menu.getPosition() == null || "left".equals( menu.getPosition() ) )
+        {
+            html.append( "        <h5>" ).append( img ).append( ' ' ).append( menu.getName() ).append( "</h5>\n" );
+        }
+        else
+        {
+            html.append( "        <h5>" ).append( menu.getName() ).append( ' ' ).append( img ).append( "</h5>\n" );
+        }
+    }
+
+    private static void appendMenuItem( StringBuilder html, MenuItem item, String indent, MenuLinks menuLinks,
+                                        MenuPathIndex index, String alignedFileName, String relativePath )
+    {
+        String href = menuLinks.getLink( item );
+        boolean current = alignedFileName != null && alignedFileName.equals( href );
+        boolean hasItems = item.getItems() != null && item.getItems().size() > 0;
+
+        String collapseClass = "none";
+        if ( hasItems )
+        {
+            collapseClass = ( !item.isCollapse() || current || index.isExpanded( item, relativePath, alignedFileName ) )
+                            ? "expanded" : "collapsed";
+        }
+
+        html.append( indent ).append( "     <li class=\"" ).append( collapseClass ).append( "\">" );
+
+        if ( item.getImg() != null )
+        {
+            boolean left = "left".equals( item.getPosition() );
+            if ( !current )
+            {
+                appendLink( html, item, href, relativePath );
+            }
+            else if ( left )
+            {
+                html.append( "<strong>" );
+                appendImage( html, item, relativePath );
+                html.append( ' ' ).append( item.getName() ).append( "</strong>\n" );
+            }
+            else
+            {
+                html.append( "<strong>" ).append( item.getName() ).append( ' ' );
+                appendImage( html, item, relativePath );
+                html.append( "</strong>\n" );
+            }
+        }
+        else if ( current )
+        {
+            html.append( "<strong>" ).append( item.getName() ).append( "</strong>" );
+        }
+        else
+        {
+            appendLink( html, item, href, relativePath );
+        }
+
+        if ( hasItems && "expanded".equals( collapseClass ) )
+        {
+            html.append( '\n' ).append( indent ).append( "      <ul>\n" );
+            for ( MenuItem subitem : item.getItems() )
+            {
+                appendMenuItem( html, subitem, indent + "  ", menuLinks, index, alignedFileName, relativePath );
+            }
+            html.append( indent ).append( "      </ul>" );
+        }
+
+        html.append( "</li>\n" );
+    }
+
+    /**
+     * Same as the <code>#link</code> macro.
+     */
+    private static void appendLink( StringBuilder html, MenuItem item, String href, String relativePath )
+    {
+        html.append( "<a href=\"" ).append( href ).append( '"' );
+        if ( DecorationUtils.isLink( href ) )
+        {
+            html.append( " class=\"externalLink\"" );
+        }
+        appendAttribute( html, "target", item.getTarget() );
+        html.append( " title=\"" ).append( item.getName() ).append( "\">" );
+
+        if ( item.getImg() == null )
+        {
+            html.append( item.getName() );
+        }
+        else if ( "left".equals( item.getPosition() ) )
+        {
+            appendImage( html, item, relativePath );
+            html.append( item.getName() );
+        }
+        else
+        {
+            html.append( item.getName() ).append( ' ' );
+            appendImage( html, item, relativePath );
+        }
+
+        html.append( "</a>" );
+    }
+
+    /**
+     * Same as the <code>#image</code> macro.
+     */
+    private static void appendImage( StringBuilder html, MenuItem item, String relativePath )
+    {
+        html.append( "<img class=\"imageLink\"" );
+        html.append( " src=\"" ).append( toLink( item.getImg(), relativePath ) ).append( '"' );
+        html.append( " alt=\"" ).append( ( item.getAlt() != null ) ? item.getAlt() : "" ).append( '"' );
+        appendAttribute( html, "border", item.getBorder() );
+        appendAttribute( html, "width", item.getWidth() );
+        appendAttribute( html, "height", item.getHeight() );
+        appendAttribute( html, "title", item.getTitle() );
+        html.append( "/>" );
+    }
+
+    private static void appendAttribute( StringBuilder html, String name, String value )
+    {
+        if ( value != null )
+        {
+            html.append( ' ' ).append( name ).append( "=\"" ).append( value ).append( '"' );
+        }
+    }
+
+    private static String toLink( String href, String relativePath )
+    {
+        if ( DecorationUtils.isLink( href ) )
+        {
+            return href;
+        }
+        return calculateLink( href, relativePath );
+    }
+
+    /**
+     * Same as <code>$PathTool.calculateLink( $href, $relativePath )</code> in macros, including for menu items
+     * without href.
+     */
+    private static String calculateLink( String href, String relativePath )
+    {
+        return PathTool.calculateLink( href, relativePath ).replace( '\\', '/' );
+    }
+
+    /**
+     * Links of the menu items for a relative path.
+     */
+    private static class MenuLinks
+    {
+        private final List<Menu> menus;
+
+        private final Map<MenuItem, String> links = new IdentityHashMap<MenuItem, String>();
+
+        MenuLinks( List<Menu> menus, String relativePath )
+        {
+            this.menus = menus;
+
+            for ( Menu menu : menus )
+            {
+                if ( menu.getItems() != null )
+                {
+                    index( menu.getItems(), relativePath );
+                }
+            }
+        }
+
+        private void index( List<MenuItem> items, String relativePath )
+        {
+            for ( MenuItem item : items )
+            {
+                links.put( item, calculateLink( item.getHref(), relativePath ) );
+
+                if ( item.getItems() != null )
+                {
+                    index( item.getItems(), relativePath );
+                }
+            }
+        }
+
+        String getLink( MenuItem item )
+        {
+            return links.get( item );
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package org.apache.maven.doxia.siterenderer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Render manifest, stored in the output directory: records for every rendered document the content hash of its
+ * source, the fingerprint of the site rendering inputs it was rendered with (skin, template, decoration model,
+ * locale, encodings) and the content hash of every resource loaded by Velocity during its rendering, to skip
+ * unchanged documents without parsing them in a later rendering.
+ *
+ * @since 1.9.3
+ */
+class RenderManifest
+{
+    /**
+     * Name of the manifest file in the output directory.
+     */
+    static final String FILE_NAME = ".doxia-render-manifest.properties";
+
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+
+    private static final String PAGE_PREFIX = "page.";
+
+    private static final String DEPENDENCIES_PREFIX = "dependencies.";
+
+    private static final String UNAVAILABLE = "-";
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final File file;
+
+    private final String fingerprint;
+
+    private final Properties entries = new Properties();
+
+    private boolean modified;
+
+    /**
+     * Content hash of resources by URL, computed once per rendering.
+     */
+    private final ConcurrentMap<String, String> hashes = new ConcurrentHashMap<String, String>();
+
+    /**
+     * Load the manifest from an output directory, or start an empty one if none exists yet.
+     *
+     * @param outputDirectory the site output directory
+     * @param fingerprint the fingerprint of the current site rendering inputs
+     * @return the render manifest
+     * @throws IOException if the manifest exists but cannot be read
+     */
+    static RenderManifest load( File outputDirectory, String fingerprint )
+        throws IOException
+    {
+        RenderManifest manifest = new RenderManifest( new File( outputDirectory, FILE_NAME ), fingerprint );
+
+        if ( manifest.file.isFile() )
+        {
+            InputStream in = null;
+            try
+            {
+                in = new FileInputStream( manifest.file );
+                manifest.entries.load( in );
+            }
+            finally
+            {
+                IOUtil.close( in );
+            }
+        }
+
+        return manifest;
+    }
+
+    /**
+     * Start a manifest kept in memory only, never saved, to check resources loaded by Velocity outside a site
+     * rendering: content hashes of resources are computed once for the life of the manifest.
+     *
+     * @return an empty render manifest
+     */
+    static RenderManifest create()
+    {
+        return new RenderManifest( null, null );
+    }
+
+    private RenderManifest( File file, String fingerprint )
+    {
+        this.file = file;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * @return the fingerprint of the current site rendering inputs
+     */
+    String getFingerprint()
+    {
+        return fingerprint;
+    }
+
+    /**
+     * Check if a document was already rendered from the same source content with the same rendering inputs, and if
+     * none of the resources loaded by Velocity during its rendering changed since.
+     *
+     * @param outputName the document output name
+     * @param sourceHash the hash of the current document source content
+     * @return <code>true</code> if the document does not need to be rendered again
+     */
+    boolean isUpToDate( String outputName, String sourceHash )
+    {
+        if ( !entry( sourceHash ).equals( entries.getProperty( PAGE_PREFIX + outputName ) ) )
+        {
+            return false;
+        }
+
+        String dependencies = entries.getProperty( DEPENDENCIES_PREFIX + outputName );
+        if ( dependencies != null && dependencies.length() > 0 )
+        {
+            String[] tokens = dependencies.split( " " );
+            for ( int i = 0; i + 1 < tokens.length; i += 2 )
+            {
+                if ( !tokens[i + 1].equals( getHash( tokens[i] ) ) )
+                {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Record a document rendering.
+     *
+     * @param outputName the document output name
+     * @param sourceHash the hash of the document source content
+     * @param dependencies the content hash of resources loaded by Velocity during rendering, keyed by URL
+     */
+    synchronized void update( String outputName, String sourceHash, Map<String, String> dependencies )
+    {
+        entries.setProperty( PAGE_PREFIX + outputName, entry( sourceHash ) );
+
+        StringBuilder sb = new StringBuilder();
+        for ( Map.Entry<String, String> dependency : dependencies.entrySet() )
+        {
+            if ( sb.length() > 0 )
+            {
+                sb.append( ' ' );
+            }
+            // URLs don't contain spaces
+            sb.append( dependency.getKey() ).append( ' ' ).append( dependency.getValue() );
+        }
+        entries.setProperty( DEPENDENCIES_PREFIX + outputName, sb.toString() );
+
+        modified = true;
+    }
+
+    /**
+     * Forget a document, to force its rendering next time.
+     *
+     * @param outputName the document output name
+     */
+    synchronized void remove( String outputName )
+    {
+        modified |= ( entries.remove( PAGE_PREFIX + outputName ) != null );
+        modified |= ( entries.remove( DEPENDENCIES_PREFIX + outputName ) != null );
+    }
+
+    /**
+     * Save the manifest if it was modified.
+     *
+     * @throws IOException if the manifest cannot be written
+     */
+    synchronized void save()
+        throws IOException
+    {
+        if ( !modified || file == null )
+        {
+            return;
+        }
+
+        file.getParentFile().mkdirs();
+
+        OutputStream out = null;
+        try
+        {
+            out = new FileOutputStream( file );
+            entries.store( out, "Doxia Sitetools render manifest" );
+        }
+        finally
+        {
+            IOUtil.close( out );
+        }
+
+        modified = false;
+    }
+
+    /**
+     * Get the current content hash of a resource, computed only once during a rendering.
+     *
+     * @param url the resource URL
+     * @return the hex encoded content hash, or <code>-</code> if the resource is not available
+     */
+    String getHash( String url )
+    {
+        String hash = hashes.get( url );
+
+        if ( hash == null )
+        {
+            try
+            {
+                URLConnection connection = new URL( url ).openConnection();
+                // don't keep jar files opened
+                connection.setUseCaches( false );
+
+                MessageDigest digest = newDigest();
+                update( digest, connection.getInputStream() );
+                hash = toHex( digest.digest() );
+            }
+            catch ( IOException e )
+            {
+                hash = UNAVAILABLE;
+            }
+
+            hashes.putIfAbsent( url, hash );
+        }
+
+        return hash;
+    }
+
+    private String entry( String sourceHash )
+    {
+        return sourceHash + ',' + fingerprint;
+    }
+
+    /**
+     * @return a new message digest for the manifest hashes
+     */
+    static MessageDigest newDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance( DIGEST_ALGORITHM );
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            // every Java platform implementation is required to support SHA-1
+            throw new IllegalStateException( e );
+        }
+    }
+
+    /**
+     * Add the content of a stream to a digest, closing the stream.
+     *
+     * @param digest the digest to update
+     * @param in the stream to read
+     * @throws IOException if the stream cannot be read
+     */
+    static void update( MessageDigest digest, InputStream in )
+        throws IOException
+    {
+        try
+        {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ( ( n = in.read( buffer ) ) != -1 )
+            {
+                digest.update( buffer, 0, n );
+            }
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+    }
+
+    /**
+     * Hash the content of a file.
+     *
+     * @param file the file
+     * @return the hex encoded content hash
+     * @throws IOException if the file cannot be read
+     */
+    static String hash( File file )
+        throws IOException
+    {
+        MessageDigest digest = newDigest();
+        update( digest, new FileInputStream( file ) );
+        return toHex( digest.digest() );
+    }
+
+    /**
+     * @param bytes bytes to encode
+     * @return the lower case hex encoding of the bytes
+     */
+    static String toHex( byte[] bytes )
+    {
+        char[] hex = new char[bytes.length * 2];
+        for ( int i = 0; i < bytes.length; i++ )
+        {
+            hex[i * 2] = HEX[( bytes[i] >> 4 ) & 0x0f];
+            hex[i * 2 + 1] = HEX[bytes[i] & 0x0f];
+        }
+        return new String( hex );
+    }
+}
@@ -0,0 +1,270 @@
+package org.apache.maven.doxia.siterenderer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.apache.velocity.context.InternalContextAdapter;
+import org.apache.velocity.runtime.Renderable;
+
+/**
+ * Document content written directly to the template output when referenced in a Velocity template, without being
+ * converted to a string first. For templates that use the content as a string, common <code>String</code> methods
+ * are available: they work on a string created on first use.
+ *
+ * @since 1.9.3
+ */
+public abstract class RenderableContent
+    implements Renderable, CharSequence
+{
+    private String content;
+
+    /**
+     * Write the content.
+     *
+     * @param writer the writer to write the content to
+     * @throws IOException if the content cannot be written
+     */
+    public abstract void writeTo( Writer writer )
+        throws IOException;
+
+    /**
+     * @return the content as a new string
+     */
+    protected abstract String createString();
+
+    /** {@inheritDoc} */
+    public boolean render( InternalContextAdapter context, Writer writer )
+        throws IOException
+    {
+        if ( content == null )
+        {
+            writeTo( writer );
+        }
+        else
+        {
+            writer.write( content );
+        }
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString()
+    {
+        if ( content == null )
+        {
+            content = createString();
+        }
+        return content;
+    }
+
+    /** {@inheritDoc} */
+    public int length()
+    {
+        return toString().length();
+    }
+
+    /** {@inheritDoc} */
+    public char charAt( int index )
+    {
+        return toString().charAt( index );
+    }
+
+    /** {@inheritDoc} */
+    public CharSequence subSequence( int start, int end )
+    {
+        return toString().subSequence( start, end );
+    }
+
+    // String methods, for templates using the content as a string
+
+    /**
+     * @return <code>true</code> if the content is empty
+     * @see String#isEmpty()
+     */
+    public boolean isEmpty()
+    {
+        return length() == 0;
+    }
+
+    /**
+     * @param s the sequence to search for
+     * @return <code>true</code> if the content contains the sequence
+     * @see String#contains(CharSequence)
+     */
+    public boolean contains( CharSequence s )
+    {
+        return toString().contains( s );
+    }
+
+    /**
+     * @param str the substring to search for
+     * @return the index of the first occurrence of the substring, or <code>-1</code>
+     * @see String#indexOf(String)
+     */
+    public int indexOf( String str )
+    {
+        return toString().indexOf( str );
+    }
+
+    /**
+     * @param str the substring to search for
+     * @param fromIndex the index to start the search from
+     * @return the index of the first occurrence of the substring, or <code>-1</code>
+     * @see String#indexOf(String, int)
+     */
+    public int indexOf( String str, int fromIndex )
+    {
+        return toString().indexOf( str, fromIndex );
+    }
+
+    /**
+     * @param str the substring to search for
+     * @return the index of the last occurrence of the substring, or <code>-1</code>
+     * @see String#lastIndexOf(String)
+     */
+    public int lastIndexOf( String str )
+    {
+        return toString().lastIndexOf( str );
+    }
+
+    /**
+     * @param prefix the prefix
+     * @return <code>true</code> if the content starts with the prefix
+     * @see String#startsWith(String)
+     */
+    public boolean startsWith( String prefix )
+    {
+        return toString().startsWith( prefix );
+    }
+
+    /**
+     * @param suffix the suffix
+     * @return <code>true</code> if the content ends with the suffix
+     * @see String#endsWith(String)
+     */
+    public boolean endsWith( String suffix )
+    {
+        return toString().endsWith( suffix );
+    }
+
+    /**
+     * @param beginIndex the beginning index, inclusive
+     * @return the substring
+     * @see String#substring(int)
+     */
+    public String substring( int beginIndex )
+    {
+        return toString().substring( beginIndex );
+    }
+
+    /**
+     * @param beginIndex the beginning index, inclusive
+     * @param endIndex the ending index, exclusive
+     * @return the substring
+     * @see String#substring(int, int)
+     */
+    public String substring( int beginIndex, int endIndex )
+    {
+        return toString().substring( beginIndex, endIndex );
+    }
+
+    /**
+     * @param target the sequence to be replaced
+     * @param replacement the replacement sequence
+     * @return the resulting string
+     * @see String#replace(CharSequence, CharSequence)
+     */
+    public String replace( CharSequence target, CharSequence replacement )
+    {
+        return toString().replace( target, replacement );
+    }
+
+    /**
+     * @param regex the regular expression
+     * @param replacement the replacement string
+     * @return the resulting string
+     * @see String#replaceAll(String, String)
+     */
+    public String replaceAll( String regex, String replacement )
+    {
+        return toString().replaceAll( regex, replacement );
+    }
+
+    /**
+     * @param regex the regular expression
+     * @param replacement the replacement string
+     * @return the resulting string
+     * @see String#replaceFirst(String, String)
+     */
+    public String replaceFirst( String regex, String replacement )
+    {
+        return toString().replaceFirst( regex, replacement );
+    }
+
+    /**
+     * @param regex the delimiting regular expression
+     * @return the array of strings computed by splitting the content
+     * @see String#split(String)
+     */
+    public String[] split( String regex )
+    {
+        return toString().split( regex );
+    }
+
+    /**
+     * @param regex the regular expression
+     * @return <code>true</code> if the content matches the regular expression
+     * @see String#matches(String)
+     */
+    public boolean matches( String regex )
+    {
+        return toString().matches( regex );
+    }
+
+    /**
+     * @return the content without leading and trailing whitespace
+     * @see String#trim()
+     */
+    public String trim()
+    {
+        return toString().trim();
+    }
+
+    /**
+     * @return the content in lower case
+     * @see String#toLowerCase()
+     */
+    public String toLowerCase()
+    {
+        return toString().toLowerCase();
+    }
+
+    /**
+     * @return the content in upper case
+     * @see String#toUpperCase()
+     */
+    public String toUpperCase()
+    {
+        return toString().toUpperCase();
+    }
+}
@@ -77,7 +77,7 @@ public interface Renderer // TODO rename to SiteRenderer
      * i.e. merge the document content into the site template.
      *
      * @param writer the Writer to use.
-     * @param content the document content to be merged
+     * @param content the document content to be merged, available only during this call
      * @param siteRenderingContext the SiteRenderingContext to use.
      * @throws RendererException if it bombs.
      * @since 1.8
@@ -0,0 +1,142 @@
+package org.apache.maven.doxia.siterenderer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.velocity.app.event.EventCartridge;
+import org.apache.velocity.app.event.IncludeEventHandler;
+import org.apache.velocity.context.Context;
+
+/**
+ * Records the resources loaded by Velocity while rendering a document: the site decoration template and every
+ * template or resource included with <code>#parse</code> or <code>#include</code>, transitively, with the hash of
+ * their content. The result is stored in the {@link RenderManifest}.
+ *
+ * @since 1.9.3
+ */
+class RenderingDependencies
+    implements IncludeEventHandler
+{
+    private final RenderManifest manifest;
+
+    private final Map<String, String> dependencies = new TreeMap<String, String>();
+
+    RenderingDependencies( RenderManifest manifest )
+    {
+        this.manifest = manifest;
+    }
+
+    /**
+     * Wrap a Velocity context to record resources included while merging a template with it.
+     *
+     * @param context the Velocity context
+     * @return a context with the same content, that records included resources
+     */
+    Context track( Context context )
+    {
+        DelegatingContext tracking = new DelegatingContext( context );
+
+        EventCartridge cartridge = new EventCartridge();
+        cartridge.addIncludeEventHandler( this );
+        cartridge.attachToContext( tracking );
+
+        return tracking;
+    }
+
+    /**
+     * Record a Velocity resource. Resources are looked up like Velocity resource loaders do: from the context
+     * classloader first, then from the file system.
+     *
+     * @param resource the Velocity resource name
+     */
+    void add( String resource )
+    {
+        add( resolve( resource ) );
+    }
+
+    /**
+     * Record a resource already located.
+     *
+     * @param url the resource URL, ignored if <code>null</code>
+     */
+    synchronized void add( URL url )
+    {
+        if ( url != null )
+        {
+            dependencies.put( url.toExternalForm(), manifest.getHash( url.toExternalForm() ) );
+        }
+    }
+
+    /**
+     * @return the recorded dependencies, with their content hash keyed by URL
+     */
+    synchronized Map<String, String> getDependencies()
+    {
+        return new TreeMap<String, String>( dependencies );
+    }
+
+    /** {@inheritDoc} */
+    public String includeEvent( String includeResourcePath, String currentResourcePath, String directiveName )
+    {
+        add( includeResourcePath );
+
+        return includeResourcePath;
+    }
+
+    private static URL resolve( String resource )
+    {
+        if ( resource == null )
+        {
+            return null;
+        }
+
+        String name = resource.startsWith( "/" ) ? resource.substring( 1 ) : resource;
+
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        URL url = ( classLoader == null ) ? null : classLoader.getResource( name );
+        if ( url == null )
+        {
+            url = RenderingDependencies.class.getClassLoader().getResource( name );
+        }
+
+        if ( url == null )
+        {
+            File file = new File( resource );
+            if ( file.isFile() )
+            {
+                try
+                {
+                    url = file.toURI().toURL();
+                }
+                catch ( MalformedURLException e )
+                {
+                    // ignore
+                }
+            }
+        }
+
+        return url;
+    }
+}
@@ -0,0 +1,511 @@
+package org.apache.maven.doxia.siterenderer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.LineNumberReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLConnection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.artifact.Artifact;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.ReaderFactory;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local HTTP server to preview a site without rendering it to disk: documents are located once, then each page is
+ * rendered only when requested, and kept in a least recently used cache until its source or a resource loaded by
+ * Velocity during its rendering changes, like in incremental rendering with the {@link RenderManifest}. Skin
+ * resources are served from the skin archive, and site resources from site directories.
+ *
+ * @since 1.9.3
+ */
+public class SitePreviewServer
+    implements Closeable
+{
+    private static final String RESOURCE_DIR = "org/apache/maven/doxia/siterenderer/resources";
+
+    private static final Map<String, String> CONTENT_TYPES = new HashMap<String, String>();
+
+    static
+    {
+        CONTENT_TYPES.put( "html", "text/html" );
+        CONTENT_TYPES.put( "css", "text/css" );
+        CONTENT_TYPES.put( "js", "application/javascript" );
+        CONTENT_TYPES.put( "json", "application/json" );
+        CONTENT_TYPES.put( "svg", "image/svg+xml" );
+        CONTENT_TYPES.put( "png", "image/png" );
+        CONTENT_TYPES.put( "gif", "image/gif" );
+        CONTENT_TYPES.put( "jpg", "image/jpeg" );
+        CONTENT_TYPES.put( "jpeg", "image/jpeg" );
+        CONTENT_TYPES.put( "ico", "image/x-icon" );
+        CONTENT_TYPES.put( "woff", "font/woff" );
+        CONTENT_TYPES.put( "woff2", "font/woff2" );
+        CONTENT_TYPES.put( "ttf", "font/ttf" );
+        CONTENT_TYPES.put( "txt", "text/plain" );
+    }
+
+    private final Renderer renderer;
+
+    private final SiteRenderingContext siteRenderingContext;
+
+    private final Map<String, DocumentRenderer> documents;
+
+    private final Map<String, RenderedPage> pages;
+
+    private final Set<String> defaultTemplateResources;
+
+    private final SkinArchive skinArchive;
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    /**
+     * Locate documents and bind the server, not started yet.
+     *
+     * @param renderer the site renderer
+     * @param siteRenderingContext the site rendering context
+     * @param address the address to listen to, with port <code>0</code> for any free port
+     * @param cacheSize the maximum count of rendered pages kept in cache
+     * @throws IOException if the server cannot be bound or the skin cannot be read
+     * @throws RendererException if documents cannot be located
+     */
+    public SitePreviewServer( Renderer renderer, SiteRenderingContext siteRenderingContext,
+                              InetSocketAddress address, final int cacheSize )
+        throws IOException, RendererException
+    {
+        this.renderer = renderer;
+        this.siteRenderingContext = siteRenderingContext;
+        this.documents = renderer.locateDocumentFiles( siteRenderingContext, false );
+        this.pages = new LinkedHashMap<String, RenderedPage>( 16, 0.75f, true )
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<String, RenderedPage> eldest )
+            {
+                return size() > cacheSize;
+            }
+        };
+
+        this.defaultTemplateResources = siteRenderingContext.isUsingDefaultTemplate()
+                        ? loadDefaultTemplateResources() : Collections.<String>emptySet();
+
+        this.skinArchive = getSkinArchive( renderer, siteRenderingContext.getSkin() );
+
+        this.server = HttpServer.create( address, 0 );
+
+        this.executor = Executors.newFixedThreadPool( Math.max( 2, siteRenderingContext.getRenderThreads() ),
+                                                      new PreviewThreadFactory() );
+        server.setExecutor( executor );
+        server.createContext( "/", new HttpHandler()
+        {
+            public void handle( HttpExchange exchange )
+                throws IOException
+            {
+                try
+                {
+                    serve( exchange );
+                }
+                finally
+                {
+                    exchange.close();
+                }
+            }
+        } );
+    }
+
+    /**
+     * Start serving requests, in background threads.
+     */
+    public void start()
+    {
+        server.start();
+    }
+
+    /**
+     * @return the address the server listens to
+     */
+    public InetSocketAddress getAddress()
+    {
+        return server.getAddress();
+    }
+
+    /**
+     * Stop the server.
+     */
+    public void close()
+    {
+        server.stop( 0 );
+        executor.shutdownNow();
+    }
+
+    /**
+     * Get the skin archive through the skin registry of the renderer, shared with site rendering.
+     */
+    private static SkinArchive getSkinArchive( Renderer renderer, Artifact skin )
+        throws IOException
+    {
+        if ( skin == null || skin.getFile() == null )
+        {
+            return null;
+        }
+
+        if ( renderer instanceof DefaultSiteRenderer )
+        {
+            return ( (DefaultSiteRenderer) renderer ).getSkinArchive( skin );
+        }
+
+        try
+        {
+            return SkinArchive.load( skin.getFile() );
+        }
+        catch ( XmlPullParserException e )
+        {
+            IOException ioe = new IOException( "Failed to parse skin descriptor from " + skin.getId() + " skin" );
+            ioe.initCause( e );
+            throw ioe;
+        }
+    }
+
+    private void serve( HttpExchange exchange )
+        throws IOException
+    {
+        String path = exchange.getRequestURI().getPath();
+        if ( path.endsWith( "/" ) )
+        {
+            path += "index.html";
+        }
+        path = path.substring( 1 );
+
+        if ( path.contains( ".." ) || path.startsWith( "META-INF/" ) )
+        {
+            send( exchange, 403, path, null );
+            return;
+        }
+
+        byte[] content;
+        try
+        {
+            content = getContent( path );
+        }
+        catch ( RendererException e )
+        {
+            content = ( "Error rendering " + path + ": " + e.getMessage() ).getBytes( "UTF-8" );
+            send( exchange, 500, "error.txt", content );
+            return;
+        }
+
+        if ( content == null )
+        {
+            send( exchange, 404, "not-found.txt", ( "Not found: " + path ).getBytes( "UTF-8" ) );
+        }
+        else
+        {
+            send( exchange, 200, path, content );
+        }
+    }
+
+    /**
+     * Get content like it would be in the output directory: site resources override documents and skin resources.
+     */
+    private byte[] getContent( String path )
+        throws IOException, RendererException
+    {
+        for ( File siteDirectory : siteRenderingContext.getSiteDirectories() )
+        {
+            File resource = new File( new File( siteDirectory, "resources" ), path );
+            if ( resource.isFile() )
+            {
+                return read( new FileInputStream( resource ) );
+            }
+        }
+
+        DocumentRenderer document = documents.get( path );
+        if ( document != null )
+        {
+            return getPage( path, document );
+        }
+
+        if ( skinArchive != null )
+        {
+            InputStream in = skinArchive.getEntryStream( path );
+            if ( in != null )
+            {
+                return read( in );
+            }
+        }
+
+        if ( defaultTemplateResources.contains( path ) )
+        {
+            InputStream in = getClass().getClassLoader().getResourceAsStream( RESOURCE_DIR + "/" + path );
+            if ( in != null )
+            {
+                return read( in );
+            }
+        }
+
+        if ( "css/site.css".equals( path ) )
+        {
+            return DefaultSiteRenderer.DEFAULT_SITE_CSS.getBytes( "UTF-8" );
+        }
+
+        return null;
+    }
+
+    private byte[] getPage( String path, DocumentRenderer document )
+        throws IOException, RendererException
+    {
+        File source = getSource( document );
+        String sourceHash = ( source == null || !source.isFile() ) ? null : RenderManifest.hash( source );
+
+        // content hashes of resources are computed once per request
+        RenderManifest manifest = RenderManifest.create();
+
+        RenderedPage page;
+        synchronized ( pages )
+        {
+            page = pages.get( path );
+        }
+
+        if ( page != null && page.isUpToDate( sourceHash, manifest ) )
+        {
+            return page.content;
+        }
+
+        page = render( document, sourceHash, manifest );
+
+        synchronized ( pages )
+        {
+            pages.put( path, page );
+        }
+
+        return page.content;
+    }
+
+    private RenderedPage render( DocumentRenderer document, String sourceHash, RenderManifest manifest )
+        throws RendererException, UnsupportedEncodingException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Writer writer = new OutputStreamWriter( out, siteRenderingContext.getOutputEncoding() );
+
+        Map<String, String> dependencies = Collections.emptyMap();
+        try
+        {
+            if ( renderer instanceof DefaultSiteRenderer )
+            {
+                // dependencies are tracked by rendering context: render a document in one request at a time
+                synchronized ( document )
+                {
+                    dependencies = ( (DefaultSiteRenderer) renderer )
+                        .renderTrackingDependencies( document, writer, siteRenderingContext, manifest );
+                }
+            }
+            else
+            {
+                document.renderDocument( writer, renderer, siteRenderingContext );
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new RendererException( "Error rendering " + document.getOutputName() + ": " + e.getMessage(), e );
+        }
+        finally
+        {
+            IOUtil.close( writer );
+        }
+
+        return new RenderedPage( out.toByteArray(), sourceHash, dependencies );
+    }
+
+    /**
+     * @return the resources of the default template, as listed in <code>resources.txt</code>
+     */
+    private Set<String> loadDefaultTemplateResources()
+        throws IOException
+    {
+        Set<String> resources = new HashSet<String>();
+
+        InputStream resourceList = getClass().getClassLoader().getResourceAsStream( RESOURCE_DIR + "/resources.txt" );
+        if ( resourceList != null )
+        {
+            LineNumberReader reader = null;
+            try
+            {
+                reader = new LineNumberReader( ReaderFactory.newReader( resourceList, ReaderFactory.UTF_8 ) );
+
+                String line;
+                while ( ( line = reader.readLine() ) != null )
+                {
+                    if ( !line.startsWith( "#" ) && line.trim().length() > 0 )
+                    {
+                        resources.add( line.trim() );
+                    }
+                }
+            }
+            finally
+            {
+                IOUtil.close( reader );
+                IOUtil.close( resourceList );
+            }
+        }
+
+        return resources;
+    }
+
+    private static File getSource( DocumentRenderer document )
+    {
+        RenderingContext renderingContext = document.getRenderingContext();
+
+        return ( renderingContext == null || renderingContext.getBasedir() == null ) ? null
+                        : new File( renderingContext.getBasedir(), renderingContext.getInputName() );
+    }
+
+    private void send( HttpExchange exchange, int status, String path, byte[] content )
+        throws IOException
+    {
+        if ( content != null )
+        {
+            String contentType = getContentType( path );
+            if ( contentType.startsWith( "text/html" ) )
+            {
+                contentType += "; charset=" + siteRenderingContext.getOutputEncoding();
+            }
+            exchange.getResponseHeaders().set( "Content-Type", contentType );
+        }
+
+        exchange.sendResponseHeaders( status, ( content == null ) ? -1 : content.length );
+
+        if ( content != null )
+        {
+            OutputStream out = exchange.getResponseBody();
+            out.write( content );
+            out.close();
+        }
+    }
+
+    private static String getContentType( String path )
+    {
+        String extension = path.substring( path.lastIndexOf( '.' ) + 1 ).toLowerCase( Locale.ENGLISH );
+
+        String contentType = CONTENT_TYPES.get( extension );
+        if ( contentType == null )
+        {
+            contentType = URLConnection.guessContentTypeFromName( path );
+        }
+
+        return ( contentType == null ) ? "application/octet-stream" : contentType;
+    }
+
+    private static byte[] read( InputStream in )
+        throws IOException
+    {
+        try
+        {
+            return IOUtil.toByteArray( in );
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+    }
+
+    /**
+     * A rendered page, with the content hash of its source and of the resources loaded by Velocity when rendered.
+     */
+    private static class RenderedPage
+    {
+        private final byte[] content;
+
+        private final String sourceHash;
+
+        private final Map<String, String> dependencies;
+
+        RenderedPage( byte[] content, String sourceHash, Map<String, String> dependencies )
+        {
+            this.content = content;
+            this.sourceHash = sourceHash;
+            this.dependencies = dependencies;
+        }
+
+        boolean isUpToDate( String currentSourceHash, RenderManifest manifest )
+        {
+            if ( ( sourceHash == null ) ? currentSourceHash != null : !sourceHash.equals( currentSourceHash ) )
+            {
+                return false;
+            }
+
+            for ( Map.Entry<String, String> dependency : dependencies.entrySet() )
+            {
+                if ( !dependency.getValue().equals( manifest.getHash( dependency.getKey() ) ) )
+                {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * Daemon request threads, using the context classloader of the thread that created the server, since Velocity
+     * resources are loaded from it.
+     */
+    private static class PreviewThreadFactory
+        implements ThreadFactory
+    {
+        private final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread( Runnable r )
+        {
+            Thread thread = new Thread( r, "doxia-site-preview-" + count.incrementAndGet() );
+            thread.setDaemon( true );
+            thread.setContextClassLoader( contextClassLoader );
+            return thread;
+        }
+    }
+}
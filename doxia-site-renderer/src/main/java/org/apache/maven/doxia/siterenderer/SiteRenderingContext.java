@@ -30,6 +30,7 @@ import java.util.Map;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.doxia.site.decoration.DecorationModel;
 import org.apache.maven.doxia.site.skin.SkinModel;
+import org.apache.velocity.tools.ToolManager;
 import org.codehaus.plexus.util.ReaderFactory;
 import org.codehaus.plexus.util.WriterFactory;
 
@@ -78,6 +79,26 @@ public class SiteRenderingContext
 
     private File processedContentOutput;
 
+    private int renderThreads = 1;
+
+    private boolean incrementalRendering;
+
+    private boolean reproducibleOutput;
+
+    private String templateEngine;
+
+    // state computed by DefaultSiteRenderer, reused for every document
+
+    private ToolManager toolManager;
+
+    private Object toolManagerKey;
+
+    private VelocityContextBase velocityContextBase;
+
+    private SiteTemplate siteTemplate;
+
+    private Object siteTemplateKey;
+
     /**
      * If input documents should be validated before parsing.
      * By default no validation is performed.
@@ -470,4 +491,162 @@ public class SiteRenderingContext
     {
         this.rootDirectory = rootDirectory;
     }
+
+    /**
+     * Number of threads used to render Doxia source documents.
+     *
+     * @return the number of rendering threads, <code>1</code> (the default) for sequential rendering
+     * @since 1.9.3
+     */
+    public int getRenderThreads()
+    {
+        return renderThreads;
+    }
+
+    /**
+     * Set the number of threads used to render Doxia source documents. With more than one thread, every Doxia
+     * source document is rendered on a worker thread, while other documents (like reports) are still rendered
+     * sequentially from the calling thread. Skin and site resources are copied with the same number of threads.
+     *
+     * @param renderThreads the number of rendering threads, values lower than <code>1</code> mean <code>1</code>
+     * @since 1.9.3
+     */
+    public void setRenderThreads( int renderThreads )
+    {
+        this.renderThreads = Math.max( 1, renderThreads );
+    }
+
+    /**
+     * If documents should be rendered incrementally, i.e. skipped when neither their source content nor the site
+     * rendering inputs changed since last rendering. By default, documents are rendered when their source file is
+     * newer than the output file.
+     *
+     * @return <code>true</code> if incremental rendering is switched on.
+     * @since 1.9.3
+     */
+    public boolean isIncrementalRendering()
+    {
+        return incrementalRendering;
+    }
+
+    /**
+     * Switch on/off incremental rendering: a render manifest in the output directory records the content hash of
+     * every document source and a fingerprint of the site rendering inputs (skin, template, decoration model,
+     * template properties, locale and encodings), instead of relying on file modification dates.
+     *
+     * @param incrementalRendering <code>true</code> to switch on incremental rendering.
+     * @since 1.9.3
+     */
+    public void setIncrementalRendering( boolean incrementalRendering )
+    {
+        this.incrementalRendering = incrementalRendering;
+    }
+
+    /**
+     * If rendered pages should only depend on their content, so that an unchanged page is not written again.
+     *
+     * @return <code>true</code> if reproducible output is switched on.
+     * @since 1.9.3
+     */
+    public boolean isReproducibleOutput()
+    {
+        return reproducibleOutput;
+    }
+
+    /**
+     * Switch on/off reproducible output: the generation date of pages (<code>$currentDate</code> and
+     * <code>$dateRevision</code> in templates) is the publish date instead of the current date, and every page is
+     * rendered to memory then written only if its content differs from the existing output file, which otherwise
+     * keeps its modification date. Without publish date, the current date is still used and a warning is logged
+     * when rendering.
+     *
+     * @param reproducibleOutput <code>true</code> to switch on reproducible output.
+     * @see #setPublishDate(Date)
+     * @since 1.9.3
+     */
+    public void setReproducibleOutput( boolean reproducibleOutput )
+    {
+        this.reproducibleOutput = reproducibleOutput;
+    }
+
+    /**
+     * Get the engine of the site decoration template, selected by the skin descriptor.
+     *
+     * @return the Plexus role hint of the {@link SiteTemplateEngine}, or <code>null</code> for the default Velocity
+     *         engine.
+     * @since 1.9.3
+     */
+    public String getTemplateEngine()
+    {
+        return templateEngine;
+    }
+
+    /**
+     * Set the engine of the site decoration template: the template name is interpreted by this engine.
+     *
+     * @param templateEngine the Plexus role hint of the {@link SiteTemplateEngine}, or <code>null</code> for the
+     *            default Velocity engine.
+     * @since 1.9.3
+     */
+    public void setTemplateEngine( String templateEngine )
+    {
+        this.templateEngine = templateEngine;
+    }
+
+    /**
+     * @return the Velocity tool manager configured for this site, or <code>null</code> if not created yet
+     */
+    ToolManager getToolManager()
+    {
+        return toolManager;
+    }
+
+    /**
+     * @return the key of the configuration of the tool manager, to detect context changes after its creation
+     */
+    Object getToolManagerKey()
+    {
+        return toolManagerKey;
+    }
+
+    void setToolManager( ToolManager toolManager, Object toolManagerKey )
+    {
+        this.toolManager = toolManager;
+        this.toolManagerKey = toolManagerKey;
+    }
+
+    /**
+     * @return the site-invariant entries of document Velocity contexts, or <code>null</code> if not computed yet
+     */
+    VelocityContextBase getVelocityContextBase()
+    {
+        return velocityContextBase;
+    }
+
+    void setVelocityContextBase( VelocityContextBase velocityContextBase )
+    {
+        this.velocityContextBase = velocityContextBase;
+    }
+
+    /**
+     * @return the loaded site decoration template, or <code>null</code> if not loaded yet
+     */
+    SiteTemplate getSiteTemplate()
+    {
+        return siteTemplate;
+    }
+
+    /**
+     * @return the key of the site rendering context values the site decoration template was loaded from
+     */
+    Object getSiteTemplateKey()
+    {
+        return siteTemplateKey;
+    }
+
+    void setSiteTemplate( SiteTemplate siteTemplate, Object siteTemplateKey )
+    {
+        this.siteTemplate = siteTemplate;
+        this.siteTemplateKey = siteTemplateKey;
+    }
 }
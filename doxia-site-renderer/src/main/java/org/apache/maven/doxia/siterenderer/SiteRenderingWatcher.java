@@ -0,0 +1,573 @@
+package org.apache.maven.doxia.siterenderer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.plexus.logging.Logger;
+
+/**
+ * Watch mode around a site renderer: renders the site once, then watches site directories, the skin and other
+ * site descriptor files for changes, and renders again only documents and resources affected by each change.
+ * The site renderer keeps the skin, parsed templates and parsers between changes.
+ * <p>
+ * Incremental rendering is switched on in the site rendering context: a change in a file that is not a document
+ * source, like a Velocity template included by documents, renders every document, but only those depending on
+ * the changed file are written again.
+ * </p>
+ * <p>
+ * Site descriptor files and the skin are watched only with a {@link ContextFactory}, creating a site rendering
+ * context for their new content: the site rendering context holds the decoration model and skin they were read into.
+ * This class is an API for site rendering tools, like the Maven Site Plugin: it provides no command line entry
+ * point.
+ * </p>
+ *
+ * @since 1.9.3
+ */
+public class SiteRenderingWatcher
+    implements Closeable
+{
+    /**
+     * Delay to wait for more changes before rendering, since editors write a file in several steps.
+     */
+    private static final long SETTLE_DELAY_MILLIS = 200;
+
+    /**
+     * Creates a new site rendering context when a site descriptor file or the skin changed.
+     */
+    public interface ContextFactory
+    {
+        /**
+         * @return the site rendering context for the current site descriptor and skin
+         * @throws IOException if a file cannot be read
+         * @throws RendererException if the site rendering context cannot be created
+         */
+        SiteRenderingContext createContext()
+            throws IOException, RendererException;
+    }
+
+    /**
+     * Notified at the end of every rendering of the watched site.
+     */
+    public interface Listener
+    {
+        /**
+         * @param failure the rendering failure, or <code>null</code> if the rendering succeeded
+         */
+        void rendered( RendererException failure );
+    }
+
+    private final Renderer renderer;
+
+    private final File outputDirectory;
+
+    private final Logger logger;
+
+    private final WatchService watchService;
+
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<WatchKey, Path>();
+
+    private final Set<Path> watchedFiles = new LinkedHashSet<Path>();
+
+    private SiteRenderingContext siteRenderingContext;
+
+    private ContextFactory contextFactory;
+
+    private Listener listener;
+
+    private boolean editable;
+
+    /**
+     * Source file of documents, by output name, as of last rendering.
+     */
+    private Map<String, File> documentSources = Collections.emptyMap();
+
+    /**
+     * @param renderer the site renderer
+     * @param siteRenderingContext the site rendering context
+     * @param outputDirectory the site output directory
+     * @param logger the logger for rendering reports
+     * @throws IOException if the file system does not support watching files
+     */
+    public SiteRenderingWatcher( Renderer renderer, SiteRenderingContext siteRenderingContext, File outputDirectory,
+                                 Logger logger )
+        throws IOException
+    {
+        this.renderer = renderer;
+        this.outputDirectory = outputDirectory;
+        this.logger = logger;
+        this.watchService = FileSystems.getDefault().newWatchService();
+
+        setSiteRenderingContext( siteRenderingContext );
+    }
+
+    /**
+     * Set a factory to create a new site rendering context when a site descriptor file or the skin change, and start
+     * watching the skin. Without factory, only site directories are watched.
+     *
+     * @param contextFactory the site rendering context factory
+     * @throws IOException if the skin directory cannot be watched
+     */
+    public void setContextFactory( ContextFactory contextFactory )
+        throws IOException
+    {
+        this.contextFactory = contextFactory;
+
+        watchSkin();
+    }
+
+    /**
+     * Set a listener notified at the end of every rendering, initial or caused by changes.
+     *
+     * @param listener the rendering listener
+     */
+    public void setListener( Listener listener )
+    {
+        this.listener = listener;
+    }
+
+    /**
+     * @param editable if documents are editable, see {@link Renderer#locateDocumentFiles(SiteRenderingContext,
+     * boolean)}
+     */
+    public void setEditable( boolean editable )
+    {
+        this.editable = editable;
+    }
+
+    /**
+     * Watch a site descriptor file, like <code>site.xml</code>: a change creates a new site rendering context with
+     * the context factory, and renders the whole site.
+     *
+     * @param file the file to watch
+     * @throws IOException if the file directory cannot be watched
+     * @throws IllegalStateException if no context factory is set, since the decoration model read from the file
+     *             would not be updated
+     */
+    public void addWatchedFile( File file )
+        throws IOException
+    {
+        if ( contextFactory == null )
+        {
+            throw new IllegalStateException( "A context factory is required to watch " + file );
+        }
+
+        Path path = file.getAbsoluteFile().toPath();
+
+        if ( watchedFiles.add( path ) && path.getParent() != null && Files.isDirectory( path.getParent() ) )
+        {
+            register( path.getParent() );
+        }
+    }
+
+    /**
+     * @return the current site rendering context
+     */
+    public SiteRenderingContext getSiteRenderingContext()
+    {
+        return siteRenderingContext;
+    }
+
+    /**
+     * Render every document and copy resources.
+     *
+     * @throws IOException if a file cannot be read or written
+     * @throws RendererException if a document cannot be rendered
+     */
+    public void render()
+        throws IOException, RendererException
+    {
+        renderer.copyResources( siteRenderingContext, outputDirectory );
+
+        renderDocuments( locateDocumentFiles().values() );
+    }
+
+    /**
+     * Render the site, then watch for changes until {@link #close()} is called or the thread is interrupted.
+     * Rendering errors are logged without stopping the watch, since they are usually fixed by a later change.
+     *
+     * @throws IOException if watching files failed
+     */
+    public void watch()
+        throws IOException
+    {
+        try
+        {
+            render();
+            rendered( null );
+        }
+        catch ( RendererException e )
+        {
+            logger.error( "Site rendering failed: " + e.getMessage(), e );
+            rendered( e );
+        }
+
+        try
+        {
+            while ( true )
+            {
+                Set<Path> changes = new LinkedHashSet<Path>();
+                boolean overflow = collect( watchService.take(), changes );
+
+                // wait for related changes
+                WatchKey key;
+                while ( ( key = watchService.poll( SETTLE_DELAY_MILLIS, TimeUnit.MILLISECONDS ) ) != null )
+                {
+                    overflow |= collect( key, changes );
+                }
+
+                try
+                {
+                    update( changes, overflow );
+                    rendered( null );
+                }
+                catch ( RendererException e )
+                {
+                    logger.error( "Site rendering failed: " + e.getMessage(), e );
+                    rendered( e );
+                }
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch ( ClosedWatchServiceException e )
+        {
+            // closed
+        }
+    }
+
+    /**
+     * Stop watching files.
+     *
+     * @throws IOException if the watch service cannot be closed
+     */
+    public void close()
+        throws IOException
+    {
+        watchService.close();
+    }
+
+    private void rendered( RendererException failure )
+    {
+        if ( listener != null )
+        {
+            listener.rendered( failure );
+        }
+    }
+
+    private void setSiteRenderingContext( SiteRenderingContext siteRenderingContext )
+        throws IOException
+    {
+        this.siteRenderingContext = siteRenderingContext;
+
+        siteRenderingContext.setIncrementalRendering( true );
+
+        for ( File siteDirectory : siteRenderingContext.getSiteDirectories() )
+        {
+            if ( siteDirectory.isDirectory() )
+            {
+                registerAll( siteDirectory.getAbsoluteFile().toPath() );
+            }
+        }
+
+        for ( ExtraDoxiaModuleReference module : siteRenderingContext.getModules() )
+        {
+            if ( module.getBasedir().isDirectory() )
+            {
+                registerAll( module.getBasedir().getAbsoluteFile().toPath() );
+            }
+        }
+
+        watchSkin();
+    }
+
+    private void watchSkin()
+        throws IOException
+    {
+        if ( contextFactory != null && siteRenderingContext.getSkin() != null
+            && siteRenderingContext.getSkin().getFile() != null )
+        {
+            addWatchedFile( siteRenderingContext.getSkin().getFile() );
+        }
+    }
+
+    /**
+     * Render again documents and resources affected by changed files.
+     */
+    private void update( Set<Path> changes, boolean overflow )
+        throws IOException, RendererException
+    {
+        boolean global = overflow;
+        boolean resources = false;
+        Set<File> changedFiles = new LinkedHashSet<File>();
+
+        for ( Path path : changes )
+        {
+            if ( watchedFiles.contains( path ) )
+            {
+                global = true;
+            }
+            else if ( isResource( path ) )
+            {
+                resources = true;
+            }
+            else if ( isInSiteDirectory( path ) && !Files.isDirectory( path ) )
+            {
+                changedFiles.add( path.toFile() );
+            }
+        }
+
+        if ( global )
+        {
+            logger.info( "Site descriptor or skin changed, rendering the whole site" );
+
+            if ( contextFactory != null )
+            {
+                setSiteRenderingContext( contextFactory.createContext() );
+            }
+
+            render();
+            return;
+        }
+
+        if ( resources )
+        {
+            renderer.copyResources( siteRenderingContext, outputDirectory );
+        }
+
+        if ( changedFiles.isEmpty() )
+        {
+            return;
+        }
+
+        Map<String, File> previousSources = documentSources;
+        Map<String, DocumentRenderer> documents = locateDocumentFiles();
+
+        // remove output of deleted documents
+        for ( Map.Entry<String, File> previous : previousSources.entrySet() )
+        {
+            if ( !documents.containsKey( previous.getKey() ) )
+            {
+                logger.info( "Removing " + previous.getKey() );
+                new File( outputDirectory, previous.getKey() ).delete();
+                changedFiles.remove( previous.getValue() );
+            }
+        }
+
+        List<DocumentRenderer> affected = new ArrayList<DocumentRenderer>();
+        for ( Map.Entry<String, DocumentRenderer> document : documents.entrySet() )
+        {
+            File source = documentSources.get( document.getKey() );
+            if ( source != null && changedFiles.remove( source ) )
+            {
+                affected.add( document.getValue() );
+            }
+        }
+
+        if ( changedFiles.isEmpty() )
+        {
+            renderDocuments( affected );
+        }
+        else
+        {
+            // changed files are included by documents: incremental rendering finds which ones
+            renderDocuments( documents.values() );
+        }
+    }
+
+    private Map<String, DocumentRenderer> locateDocumentFiles()
+        throws IOException, RendererException
+    {
+        Map<String, DocumentRenderer> documents = renderer.locateDocumentFiles( siteRenderingContext, editable );
+
+        Map<String, File> sources = new HashMap<String, File>();
+        for ( Map.Entry<String, DocumentRenderer> document : documents.entrySet() )
+        {
+            RenderingContext renderingContext = document.getValue().getRenderingContext();
+            if ( renderingContext != null && renderingContext.getBasedir() != null )
+            {
+                File source = new File( renderingContext.getBasedir(), renderingContext.getInputName() );
+                sources.put( document.getKey(), source.getAbsoluteFile() );
+            }
+        }
+        documentSources = sources;
+
+        return documents;
+    }
+
+    private void renderDocuments( Collection<DocumentRenderer> documents )
+        throws IOException, RendererException
+    {
+        if ( documents.isEmpty() )
+        {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+
+        renderer.render( documents, siteRenderingContext, outputDirectory );
+
+        logger.info( "Rendered " + documents.size() + " documents in " + ( System.currentTimeMillis() - start )
+            + " ms" );
+    }
+
+    private boolean isResource( Path path )
+    {
+        for ( File siteDirectory : siteRenderingContext.getSiteDirectories() )
+        {
+            if ( path.startsWith( new File( siteDirectory, "resources" ).getAbsoluteFile().toPath() ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isInSiteDirectory( Path path )
+    {
+        for ( File siteDirectory : siteRenderingContext.getSiteDirectories() )
+        {
+            if ( path.startsWith( siteDirectory.getAbsoluteFile().toPath() ) )
+            {
+                return true;
+            }
+        }
+        for ( ExtraDoxiaModuleReference module : siteRenderingContext.getModules() )
+        {
+            if ( path.startsWith( module.getBasedir().getAbsoluteFile().toPath() ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Collect changed paths of a watch key, and watch created directories.
+     *
+     * @return <code>true</code> if events were lost
+     */
+    private boolean collect( WatchKey key, Set<Path> changes )
+        throws IOException
+    {
+        boolean overflow = false;
+        Path directory = watchedDirectories.get( key );
+
+        for ( WatchEvent<?> event : key.pollEvents() )
+        {
+            if ( event.kind() == StandardWatchEventKinds.OVERFLOW )
+            {
+                overflow = true;
+                continue;
+            }
+
+            if ( directory == null )
+            {
+                continue;
+            }
+
+            Path path = directory.resolve( (Path) event.context() );
+            changes.add( path );
+
+            if ( event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                && Files.isDirectory( path, LinkOption.NOFOLLOW_LINKS ) && isInSiteDirectory( path ) )
+            {
+                registerAll( path );
+                // files created before the directory was watched
+                collectAll( path, changes );
+            }
+        }
+
+        if ( !key.reset() )
+        {
+            watchedDirectories.remove( key );
+        }
+
+        return overflow;
+    }
+
+    private void collectAll( Path directory, final Set<Path> changes )
+        throws IOException
+    {
+        Files.walkFileTree( directory, new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult visitFile( Path file, BasicFileAttributes attrs )
+            {
+                changes.add( file );
+                return FileVisitResult.CONTINUE;
+            }
+        } );
+    }
+
+    private void registerAll( Path directory )
+        throws IOException
+    {
+        Files.walkFileTree( directory, new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult preVisitDirectory( Path dir, BasicFileAttributes attrs )
+                throws IOException
+            {
+                register( dir );
+                return FileVisitResult.CONTINUE;
+            }
+        } );
+    }
+
+    private void register( Path directory )
+        throws IOException
+    {
+        if ( watchedDirectories.containsValue( directory ) )
+        {
+            return;
+        }
+
+        WatchKey key = directory.register( watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                                           StandardWatchEventKinds.ENTRY_DELETE,
+                                           StandardWatchEventKinds.ENTRY_MODIFY );
+        watchedDirectories.put( key, directory );
+    }
+}
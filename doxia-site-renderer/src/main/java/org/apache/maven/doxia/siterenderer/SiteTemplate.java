@@ -0,0 +1,54 @@
+package org.apache.maven.doxia.siterenderer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+ */
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URL;
+import java.util.List;
+
+import org.apache.velocity.context.Context;
+
+/**
+ * Site decoration template loaded by a {@link SiteTemplateEngine}, merged with every document of a site.
+ * Documents are merged concurrently: implementations must be thread-safe.
+ *
+ * @since 1.9.3
+ */
+public interface SiteTemplate
+{
+    /**
+     * Merge a document into the site decoration template.
+     *
+     * @param context the document context, with the document body and the Velocity tools configured for the site
+     * @param writer the writer to write the decorated document to
+     * @throws RendererException if the template fails
+     * @throws IOException if the document cannot be written
+     */
+    void merge( Context context, Writer writer )
+        throws RendererException, IOException;
+
+    /**
+     * @return the locations of the resources the template was loaded from, to render documents again when they
+     *         change, or an empty list if unknown
+     */
+    List<URL> getResources();
+}
@@ -0,0 +1,53 @@
+package org.apache.maven.doxia.siterenderer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+ */
+
+/**
+ * Engine loading site decoration templates, selected with the <code>templateEngine</code> of the skin descriptor
+ * as Plexus role hint: <code>velocity</code> by default. Other engines are Plexus components with this role,
+ * provided with the site renderer.
+ *
+ * @see SiteRenderingContext#getTemplateEngine()
+ * @since 1.9.3
+ */
+public interface SiteTemplateEngine
+{
+    /**
+     * Plexus lookup role.
+     */
+    String ROLE = SiteTemplateEngine.class.getName();
+
+    /**
+     * Role hint of the default engine.
+     */
+    String DEFAULT_ENGINE = "velocity";
+
+    /**
+     * Load the site decoration template of a site rendering context, once for every document using it.
+     * The template classloader of the context is the context classloader during this call.
+     *
+     * @param siteRenderingContext the site rendering context, with the template name and classloader
+     * @return the loaded template
+     * @throws RendererException if the template cannot be found or loaded
+     */
+    SiteTemplate loadTemplate( SiteRenderingContext siteRenderingContext )
+        throws RendererException;
+}
@@ -0,0 +1,206 @@
+package org.apache.maven.doxia.siterenderer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.velocity.tools.ToolContext;
+import org.apache.velocity.tools.ToolManager;
+
+/**
+ * Velocity tool manager for a site, creating {@link SiteToolContext}s.
+ *
+ * @since 1.9.3
+ */
+class SiteToolManager
+    extends ToolManager
+{
+    SiteToolManager()
+    {
+        super( false, false );
+    }
+
+    @Override
+    public ToolContext createContext( Map<String, Object> toolProps )
+    {
+        ToolContext context = new SiteToolContext( toolProps );
+        prepareContext( context );
+        return context;
+    }
+
+    /**
+     * Velocity tools context layered on top of a site base: document entries are stored in the context itself,
+     * while site-invariant entries are read from a base map, shared read-only between every document of a site.
+     * Document entries hide base entries with the same key. Base entries are user entries: they hide tools with the
+     * same key, unless users can't overwrite tools, like entries put in the context.
+     */
+    static class SiteToolContext
+        extends ToolContext
+    {
+        private Map<String, Object> base;
+
+        /**
+         * Base entries removed from this context.
+         */
+        private Set<Object> removed;
+
+        /**
+         * Keys of the entries converted to strings when read.
+         */
+        private Set<String> stringKeys;
+
+        SiteToolContext( Map<String, Object> toolProps )
+        {
+            super( toolProps );
+        }
+
+        /**
+         * @param base the site-invariant entries, not modified by this context
+         */
+        void setBase( Map<String, Object> base )
+        {
+            this.base = base;
+        }
+
+        private boolean inBase( Object key )
+        {
+            return base != null && base.containsKey( key ) && ( removed == null || !removed.contains( key ) );
+        }
+
+        @Override
+        protected Object internalGet( String key )
+        {
+            Object value;
+            if ( getUserCanOverwriteTools() )
+            {
+                value = getUserEntry( key );
+                if ( value == null )
+                {
+                    value = getTool( key );
+                }
+            }
+            else
+            {
+                value = getTool( key );
+                if ( value == null )
+                {
+                    value = getUserEntry( key );
+                }
+            }
+
+            if ( value != null && stringKeys != null && stringKeys.contains( key ) )
+            {
+                value = value.toString();
+            }
+
+            return value;
+        }
+
+        /**
+         * @return the document entry, or else the base entry
+         */
+        private Object getUserEntry( String key )
+        {
+            Object value = getUserVar( key );
+
+            if ( value == null && inBase( key ) )
+            {
+                value = base.get( key );
+            }
+
+            return value;
+        }
+
+        /**
+         * Put an entry read as a string, converted on first read: templates get a <code>String</code> they can pass
+         * to any method, while the string is only created for templates reading the entry.
+         *
+         * @param key the entry key
+         * @param value the entry value, converted to a string with <code>toString()</code>
+         */
+        void putString( String key, CharSequence value )
+        {
+            put( key, value );
+
+            if ( stringKeys == null )
+            {
+                stringKeys = new HashSet<String>();
+            }
+            stringKeys.add( key );
+        }
+
+        @Override
+        public Object put( String key, Object value )
+        {
+            if ( removed != null )
+            {
+                removed.remove( key );
+            }
+            if ( stringKeys != null )
+            {
+                stringKeys.remove( key );
+            }
+
+            return super.put( key, value );
+        }
+
+        @Override
+        public Object remove( Object key )
+        {
+            Object value = super.remove( key );
+
+            if ( inBase( key ) )
+            {
+                if ( value == null )
+                {
+                    value = base.get( key );
+                }
+                if ( removed == null )
+                {
+                    removed = new HashSet<Object>();
+                }
+                removed.add( key );
+            }
+
+            return value;
+        }
+
+        @Override
+        public Set<String> keySet()
+        {
+            Set<String> keys = super.keySet();
+
+            if ( base != null )
+            {
+                for ( String key : base.keySet() )
+                {
+                    if ( removed == null || !removed.contains( key ) )
+                    {
+                        keys.add( key );
+                    }
+                }
+            }
+
+            return keys;
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package org.apache.maven.doxia.siterenderer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.util.regex.Pattern;
+
+import org.apache.maven.doxia.logging.Log;
+import org.apache.maven.doxia.parser.AbstractXmlParser;
+import org.apache.maven.doxia.parser.ParseException;
+import org.apache.xerces.parsers.SAXParser;
+import org.apache.xerces.util.XMLGrammarPoolImpl;
+import org.apache.xerces.xni.grammars.XMLGrammarPool;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Validates XML source documents in a single streaming SAX pass, with the same rules as Doxia
+ * <code>XmlValidator</code>. DTD and XML Schema grammars are compiled once and kept in a grammar pool shared by every
+ * validation, and entities are resolved with Doxia's in-memory entity cache, which looks for them in the classpath
+ * before downloading them.
+ * Validations can run concurrently: each one uses its own <code>XMLReader</code>.
+ *
+ * @since 1.9.3
+ */
+class SiteXmlValidator
+{
+    private static final String GRAMMAR_POOL = "http://apache.org/xml/properties/internal/grammar-pool";
+
+    // states reading the head of a document
+    private static final int PROLOG = 0;
+
+    private static final int PI = 1;
+
+    private static final int MARKUP = 2;
+
+    private static final int COMMENT = 3;
+
+    private static final int DOCTYPE = 4;
+
+    private static final int SUBSET_COMMENT = 5;
+
+    private static final int ROOT = 6;
+
+    private static final Pattern PATTERN_DOCTYPE = Pattern.compile( "<!DOCTYPE\\s", Pattern.CASE_INSENSITIVE );
+
+    private static final Pattern PATTERN_XSD =
+        Pattern.compile( "<[A-Za-z][^<>]*http://www\\.w3\\.org/2001/XMLSchema-instance" );
+
+    /**
+     * Xerces message when an element is not declared in the DTD.
+     */
+    private static final Pattern ELEMENT_TYPE_PATTERN =
+        Pattern.compile( "Element type \".*\" must be declared.", Pattern.DOTALL );
+
+    private static final String EOL = System.getProperty( "line.separator" );
+
+    private final XMLGrammarPool grammarPool = new XMLGrammarPoolImpl();
+
+    /**
+     * Validate a document: the source is read until its end, and closed.
+     *
+     * @param source the document source
+     * @param log the log to report warnings to
+     * @throws ParseException if the document is not valid
+     * @throws IOException if the source can't be read
+     */
+    void validate( Reader source, Log log )
+        throws ParseException, IOException
+    {
+        Reader reader = new BufferedReader( source );
+        try
+        {
+            // look for a DOCTYPE and a XML Schema in the prolog and the root element start tag only, without reading
+            // the whole content
+            String head = readHead( reader );
+            boolean hasDtdAndXsd = PATTERN_DOCTYPE.matcher( head ).find() && PATTERN_XSD.matcher( head ).find();
+
+            PushbackReader parsed = new PushbackReader( reader, Math.max( 1, head.length() ) );
+            parsed.unread( head.toCharArray() );
+            reader = parsed;
+
+            getXmlReader( hasDtdAndXsd, log ).parse( new InputSource( reader ) );
+        }
+        catch ( SAXException e )
+        {
+            throw new ParseException( "Error validating the model: " + e.getMessage(), e );
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    /**
+     * Read a document until the end of its root element start tag: XML declaration, comments, processing
+     * instructions and document type declaration, of any length.
+     *
+     * @param reader the document
+     * @return the characters read, up to the end of the root element start tag, or less if the document is not
+     *         well-formed
+     * @throws IOException if the document can't be read
+     */
+    static String readHead( Reader reader )
+        throws IOException
+    {
+        StringBuilder head = new StringBuilder( 1024 );
+        int state = PROLOG;
+        char quote = 0;
+        int subset = 0;
+
+        int c;
+        while ( ( c = reader.read() ) >= 0 )
+        {
+            char ch = (char) c;
+            head.append( ch );
+
+            if ( quote != 0 )
+            {
+                // in a quoted value of the document type declaration or root element
+                if ( ch == quote )
+                {
+                    quote = 0;
+                }
+                continue;
+            }
+
+            switch ( state )
+            {
+                case PROLOG:
+                    if ( endsWith( head, "<?" ) )
+                    {
+                        state = PI;
+                    }
+                    else if ( endsWith( head, "<!" ) )
+                    {
+                        state = MARKUP;
+                    }
+                    else if ( head.length() > 1 && head.charAt( head.length() - 2 ) == '<' )
+                    {
+                        // root element, or not well-formed
+                        state = ROOT;
+                    }
+                    else if ( ch != '<' && ch != '\uFEFF' && !Character.isWhitespace( ch ) )
+                    {
+                        return head.toString();
+                    }
+                    break;
+
+                case PI:
+                    if ( endsWith( head, "?>" ) )
+                    {
+                        state = PROLOG;
+                    }
+                    break;
+
+                case MARKUP:
+                    if ( endsWith( head, "<!--" ) )
+                    {
+                        state = COMMENT;
+                    }
+                    else if ( ch != '-' )
+                    {
+                        state = DOCTYPE;
+                        subset = 0;
+                    }
+                    break;
+
+                case COMMENT:
+                    if ( endsWith( head, "-->" ) )
+                    {
+                        state = PROLOG;
+                    }
+                    break;
+
+                case DOCTYPE:
+                    if ( subset > 0 && endsWith( head, "<!--" ) )
+                    {
+                        state = SUBSET_COMMENT;
+                    }
+                    else if ( ch == '"' || ch == '\'' )
+                    {
+                        quote = ch;
+                    }
+                    else if ( ch == '[' )
+                    {
+                        subset++;
+                    }
+                    else if ( ch == ']' )
+                    {
+                        subset--;
+                    }
+                    else if ( ch == '>' && subset <= 0 )
+                    {
+                        state = PROLOG;
+                    }
+                    break;
+
+                case SUBSET_COMMENT:
+                    if ( endsWith( head, "-->" ) )
+                    {
+                        state = DOCTYPE;
+                    }
+                    break;
+
+                default:
+                    // root element start tag
+                    if ( ch == '"' || ch == '\'' )
+                    {
+                        quote = ch;
+                    }
+                    else if ( ch == '>' )
+                    {
+                        return head.toString();
+                    }
+            }
+        }
+
+        return head.toString();
+    }
+
+    private static boolean endsWith( StringBuilder s, String suffix )
+    {
+        int start = s.length() - suffix.length();
+        return start >= 0 && s.indexOf( suffix, start ) == start;
+    }
+
+    private XMLReader getXmlReader( boolean hasDtdAndXsd, Log log )
+        throws SAXException
+    {
+        XMLReader xmlReader = new SAXParser();
+        xmlReader.setFeature( "http://xml.org/sax/features/validation", true );
+        xmlReader.setFeature( "http://apache.org/xml/features/validation/schema", true );
+        xmlReader.setProperty( GRAMMAR_POOL, grammarPool );
+        xmlReader.setErrorHandler( new MessagesErrorHandler( hasDtdAndXsd, log ) );
+        xmlReader.setEntityResolver( new AbstractXmlParser.CachedFileEntityResolver() );
+        return xmlReader;
+    }
+
+    /**
+     * Logs warnings, and fails on errors.
+     */
+    private static class MessagesErrorHandler
+        extends DefaultHandler
+    {
+        private final boolean hasDtdAndXsd;
+
+        private final Log log;
+
+        MessagesErrorHandler( boolean hasDtdAndXsd, Log log )
+        {
+            this.hasDtdAndXsd = hasDtdAndXsd;
+            this.log = log;
+        }
+
+        @Override
+        public void warning( SAXParseException e )
+        {
+            log.warn( getMessage( "Warning:", e ) );
+        }
+
+        @Override
+        public void error( SAXParseException e )
+            throws SAXException
+        {
+            fail( "Error:", e );
+        }
+
+        @Override
+        public void fatalError( SAXParseException e )
+            throws SAXException
+        {
+            fail( "Fatal error:", e );
+        }
+
+        private void fail( String type, SAXParseException e )
+            throws SAXException
+        {
+            // Xerces complains about undeclared elements when an XML with XSD also needs a DOCTYPE for its entities
+            if ( hasDtdAndXsd && ELEMENT_TYPE_PATTERN.matcher( String.valueOf( e.getMessage() ) ).find() )
+            {
+                return;
+            }
+
+            throw new SAXException( getMessage( type, e ) );
+        }
+
+        private static String getMessage( String type, SAXParseException e )
+        {
+            return type + EOL
+                + "  Public ID: " + e.getPublicId() + EOL
+                + "  System ID: " + e.getSystemId() + EOL
+                + "  Line number: " + e.getLineNumber() + EOL
+                + "  Column number: " + e.getColumnNumber() + EOL
+                + "  Message: " + e.getMessage() + EOL;
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package org.apache.maven.doxia.siterenderer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import org.apache.maven.doxia.site.skin.SkinModel;
+import org.apache.maven.doxia.site.skin.io.xpp3.SkinXpp3Reader;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+
+/**
+ * Content of a skin artifact file read once: skin descriptor, entry index, checksum, and the classloader and
+ * loaded decoration template shared by every site rendering context using the skin.
+ *
+ * @since 1.9.3
+ */
+class SkinArchive
+{
+    private final File file;
+
+    private final long length;
+
+    private final long lastModified;
+
+    private final String checksum;
+
+    private final List<Entry> entries;
+
+    private final Set<String> entryNames;
+
+    private final SkinModel skinModel;
+
+    private final URLClassLoader classLoader;
+
+    private SiteTemplate siteTemplate;
+
+    private Object siteTemplateKey;
+
+    private SkinArchive( File file, long length, long lastModified, String checksum, List<Entry> entries,
+                         SkinModel skinModel )
+        throws IOException
+    {
+        this.file = file;
+        this.length = length;
+        this.lastModified = lastModified;
+        this.checksum = checksum;
+        this.entries = Collections.unmodifiableList( entries );
+        this.entryNames = new HashSet<String>();
+        for ( Entry entry : entries )
+        {
+            entryNames.add( entry.getName() );
+        }
+        this.skinModel = skinModel;
+        this.classLoader = new URLClassLoader( new URL[] { file.toURI().toURL() } );
+    }
+
+    /**
+     * Read a skin artifact file.
+     *
+     * @param file the skin artifact file
+     * @return the skin archive content
+     * @throws IOException if the file cannot be read
+     * @throws XmlPullParserException if the skin descriptor cannot be parsed
+     */
+    static SkinArchive load( File file )
+        throws IOException, XmlPullParserException
+    {
+        if ( file == null )
+        {
+            throw new IOException( "Error opening ZipFile: null" );
+        }
+
+        long length = file.length();
+        long lastModified = file.lastModified();
+
+        ZipFile zipFile;
+        try
+        {
+            zipFile = new ZipFile( file );
+        }
+        catch ( ZipException ex )
+        {
+            IOException ioe = new IOException( "Error opening ZipFile: " + file.getAbsolutePath() );
+            ioe.initCause( ex );
+            throw ioe;
+        }
+
+        InputStream in = null;
+        try
+        {
+            // the central directory gives the size and CRC-32 of every entry: no need to read the whole file
+            MessageDigest digest = RenderManifest.newDigest();
+            List<Entry> entries = new ArrayList<Entry>();
+            for ( Enumeration<? extends ZipEntry> e = zipFile.entries(); e.hasMoreElements(); )
+            {
+                Entry entry = new Entry( e.nextElement() );
+                entries.add( entry );
+                digest.update( ( entry.getName() + '\0' + entry.getSize() + '\0' + entry.getCrc() + '\n' )
+                    .getBytes( "UTF-8" ) );
+            }
+            String checksum = RenderManifest.toHex( digest.digest() );
+
+            SkinModel skinModel = null;
+            ZipEntry skinDescriptorEntry = zipFile.getEntry( SkinModel.SKIN_DESCRIPTOR_LOCATION );
+            if ( skinDescriptorEntry != null )
+            {
+                in = zipFile.getInputStream( skinDescriptorEntry );
+
+                skinModel = new SkinXpp3Reader().read( in );
+            }
+
+            return new SkinArchive( file, length, lastModified, checksum, entries, skinModel );
+        }
+        finally
+        {
+            IOUtil.close( in );
+            try
+            {
+                zipFile.close();
+            }
+            catch ( IOException e )
+            {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the skin artifact file was not modified since it was read
+     */
+    boolean isUpToDate()
+    {
+        return file.length() == length && file.lastModified() == lastModified;
+    }
+
+    File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * @return the hex encoded hash of the name, size and CRC-32 of every entry of the skin artifact file
+     */
+    String getChecksum()
+    {
+        return checksum;
+    }
+
+    /**
+     * @return every entry of the skin artifact file, in archive order
+     */
+    List<Entry> getEntries()
+    {
+        return entries;
+    }
+
+    boolean hasEntry( String name )
+    {
+        return entryNames.contains( name );
+    }
+
+    /**
+     * Open a file entry of the skin artifact.
+     *
+     * @param name the entry name
+     * @return the entry content, or <code>null</code> if the skin has no such file
+     * @throws IOException if the entry cannot be read
+     */
+    InputStream getEntryStream( String name )
+        throws IOException
+    {
+        if ( !hasEntry( name ) || name.endsWith( "/" ) )
+        {
+            return null;
+        }
+
+        // only in the skin artifact, not in parent classloaders
+        URL url = classLoader.findResource( name );
+        return ( url == null ) ? null : url.openStream();
+    }
+
+    /**
+     * @return the skin descriptor, or <code>null</code> if the skin has none
+     */
+    SkinModel getSkinModel()
+    {
+        return skinModel;
+    }
+
+    /**
+     * @return the classloader to load skin resources from
+     */
+    ClassLoader getClassLoader()
+    {
+        return classLoader;
+    }
+
+    /**
+     * Close the skin classloader, once the skin is not used anymore.
+     */
+    void close()
+    {
+        try
+        {
+            classLoader.close();
+        }
+        catch ( IOException e )
+        {
+            // ignore
+        }
+    }
+
+    /**
+     * @return the loaded skin decoration template, or <code>null</code> if not loaded yet
+     */
+    synchronized SiteTemplate getSiteTemplate()
+    {
+        return siteTemplate;
+    }
+
+    /**
+     * @return the key of the site rendering context values the skin decoration template was loaded from
+     */
+    synchronized Object getSiteTemplateKey()
+    {
+        return siteTemplateKey;
+    }
+
+    synchronized void setSiteTemplate( SiteTemplate siteTemplate, Object siteTemplateKey )
+    {
+        this.siteTemplate = siteTemplate;
+        this.siteTemplateKey = siteTemplateKey;
+    }
+
+    /**
+     * Skin archive entry index: name, uncompressed size and CRC-32.
+     */
+    static class Entry
+    {
+        private final String name;
+
+        private final long size;
+
+        private final long crc;
+
+        Entry( ZipEntry entry )
+        {
+            this.name = entry.getName();
+            this.size = entry.getSize();
+            this.crc = entry.getCrc();
+        }
+
+        String getName()
+        {
+            return name;
+        }
+
+        boolean isDirectory()
+        {
+            return name.endsWith( "/" );
+        }
+
+        /**
+         * @return the uncompressed size, or <code>-1</code> if not known
+         */
+        long getSize()
+        {
+            return size;
+        }
+
+        /**
+         * @return the CRC-32 of the uncompressed content, or <code>-1</code> if not known
+         */
+        long getCrc()
+        {
+            return crc;
+        }
+    }
+}
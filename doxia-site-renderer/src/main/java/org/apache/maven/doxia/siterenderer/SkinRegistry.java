@@ -0,0 +1,105 @@
+package org.apache.maven.doxia.siterenderer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+
+/**
+ * Registry of skin artifact files read by a site renderer, to read each skin once for every module of a build
+ * using it. A skin is read again if its file is modified. The registry keeps the most recently used skins only, and
+ * closes the classloader of the skins it drops.
+ *
+ * @since 1.9.3
+ */
+class SkinRegistry
+{
+    /**
+     * Maximum count of skins kept.
+     */
+    static final int MAX_SIZE = 16;
+
+    private final Map<File, SkinArchive> archives = new LinkedHashMap<File, SkinArchive>( MAX_SIZE, 0.75f, true )
+    {
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<File, SkinArchive> eldest )
+        {
+            if ( size() <= MAX_SIZE )
+            {
+                return false;
+            }
+            eldest.getValue().close();
+            return true;
+        }
+    };
+
+    /**
+     * Get a skin archive, read only if it was not already, or if the file was modified since.
+     *
+     * @param file the skin artifact file
+     * @return the skin archive content
+     * @throws IOException if the file cannot be read
+     * @throws XmlPullParserException if the skin descriptor cannot be parsed
+     */
+    synchronized SkinArchive get( File file )
+        throws IOException, XmlPullParserException
+    {
+        if ( file == null )
+        {
+            throw new IOException( "Error opening ZipFile: null" );
+        }
+
+        File key = file.getAbsoluteFile();
+
+        SkinArchive archive = archives.get( key );
+
+        if ( archive == null || !archive.isUpToDate() )
+        {
+            SkinArchive replaced = archive;
+
+            archive = SkinArchive.load( key );
+
+            archives.put( key, archive );
+
+            if ( replaced != null )
+            {
+                replaced.close();
+            }
+        }
+
+        return archive;
+    }
+
+    /**
+     * Drop every skin, closing their classloaders.
+     */
+    synchronized void clear()
+    {
+        for ( SkinArchive archive : archives.values() )
+        {
+            archive.close();
+        }
+        archives.clear();
+    }
+}
@@ -0,0 +1,180 @@
+package org.apache.maven.doxia.siterenderer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Extracts skin resources to the site output directory. Existing output files are never overwritten: they have
+ * the same content from a previous extraction, or are site resources overriding the skin resource.
+ *
+ * @since 1.9.3
+ */
+class SkinResourceExtractor
+{
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final SkinArchive skinArchive;
+
+    private final File outputDirectory;
+
+    private final List<SkinArchive.Entry> outdatedEntries = new ArrayList<SkinArchive.Entry>();
+
+    /**
+     * Find skin resources to extract, and create output directories.
+     *
+     * @param skinArchive the skin
+     * @param outputDirectory the site output directory
+     */
+    SkinResourceExtractor( SkinArchive skinArchive, File outputDirectory )
+    {
+        this.skinArchive = skinArchive;
+        this.outputDirectory = outputDirectory;
+
+        Set<File> directories = new LinkedHashSet<File>();
+
+        for ( SkinArchive.Entry entry : skinArchive.getEntries() )
+        {
+            if ( entry.getName().startsWith( "META-INF/" ) )
+            {
+                continue;
+            }
+
+            File destFile = new File( outputDirectory, entry.getName() );
+
+            if ( entry.isDirectory() )
+            {
+                directories.add( destFile );
+            }
+            else if ( !destFile.exists() )
+            {
+                directories.add( destFile.getParentFile() );
+                outdatedEntries.add( entry );
+            }
+        }
+
+        // create each directory once, before concurrent extraction
+        for ( File directory : directories )
+        {
+            directory.mkdirs();
+        }
+    }
+
+    /**
+     * @return the skin resources without output file, that need to be extracted
+     */
+    List<SkinArchive.Entry> getOutdatedEntries()
+    {
+        return outdatedEntries;
+    }
+
+    /**
+     * Create extraction tasks for outdated skin resources, to be run concurrently on the same skin zip file.
+     *
+     * @param zipFile the opened skin archive file, closed by the caller after every task completed
+     * @param taskCount the maximum number of tasks
+     * @return the extraction tasks
+     */
+    List<Callable<Void>> createTasks( final ZipFile zipFile, int taskCount )
+    {
+        int count = Math.max( 1, Math.min( taskCount, outdatedEntries.size() ) );
+
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>( count );
+
+        for ( int i = 0; i < count; i++ )
+        {
+            final List<SkinArchive.Entry> entries = new ArrayList<SkinArchive.Entry>();
+            for ( int j = i; j < outdatedEntries.size(); j += count )
+            {
+                entries.add( outdatedEntries.get( j ) );
+            }
+
+            tasks.add( new Callable<Void>()
+            {
+                public Void call()
+                    throws IOException
+                {
+                    ByteBuffer buffer = ByteBuffer.allocateDirect( BUFFER_SIZE );
+
+                    for ( SkinArchive.Entry entry : entries )
+                    {
+                        extract( zipFile, entry, new File( outputDirectory, entry.getName() ), buffer );
+                    }
+
+                    return null;
+                }
+            } );
+        }
+
+        return tasks;
+    }
+
+    private static void extract( ZipFile zipFile, SkinArchive.Entry entry, File destFile, ByteBuffer buffer )
+        throws IOException
+    {
+        ZipEntry zipEntry = zipFile.getEntry( entry.getName() );
+        if ( zipEntry == null )
+        {
+            throw new IOException( "Skin entry " + entry.getName() + " not found in " + zipFile.getName() );
+        }
+
+        ReadableByteChannel in = null;
+        FileOutputStream out = null;
+        try
+        {
+            in = Channels.newChannel( zipFile.getInputStream( zipEntry ) );
+            out = new FileOutputStream( destFile );
+            FileChannel channel = out.getChannel();
+
+            // Buffer methods: ByteBuffer overrides returning ByteBuffer only exist since Java 9
+            ( (Buffer) buffer ).clear();
+            while ( in.read( buffer ) != -1 )
+            {
+                ( (Buffer) buffer ).flip();
+                while ( buffer.hasRemaining() )
+                {
+                    channel.write( buffer );
+                }
+                ( (Buffer) buffer ).clear();
+            }
+        }
+        finally
+        {
+            IOUtil.close( out );
+            IOUtil.close( in );
+        }
+    }
+}
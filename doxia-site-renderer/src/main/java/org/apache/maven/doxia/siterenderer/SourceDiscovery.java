@@ -0,0 +1,286 @@
+package org.apache.maven.doxia.siterenderer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.maven.doxia.parser.module.ParserModule;
+import org.codehaus.plexus.util.AbstractScanner;
+import org.codehaus.plexus.util.MatchPatterns;
+import org.codehaus.plexus.util.StringUtils;
+
+/**
+ * Discovers Doxia source documents of a site directory in a single file tree walk: each file is dispatched to the
+ * parser modules by its extension, looked up case-insensitively in a suffix table. Only module source directories
+ * are walked.
+ *
+ * @since 1.9.3
+ */
+class SourceDiscovery
+{
+    private static final String VELOCITY_EXTENSION = ".vm";
+
+    private final List<ModuleSources> moduleSources = new ArrayList<ModuleSources>();
+
+    /**
+     * Prepare the discovery of source documents.
+     *
+     * @param siteDirectory the site directory, containing module source directories
+     * @param modules the parser modules
+     * @param moduleExcludes the exclude patterns by parser id, comma separated, or <code>null</code>
+     */
+    SourceDiscovery( File siteDirectory, Iterable<ParserModule> modules, Map<String, String> moduleExcludes )
+    {
+        for ( ParserModule module : modules )
+        {
+            add( new File( siteDirectory, module.getSourceDirectory() ), module, moduleExcludes );
+        }
+    }
+
+    /**
+     * Prepare the discovery of source documents of a single parser module.
+     *
+     * @param moduleBasedir the module source directory
+     * @param module the parser module
+     * @param moduleExcludes the exclude patterns by parser id, comma separated, or <code>null</code>
+     */
+    SourceDiscovery( File moduleBasedir, ParserModule module, Map<String, String> moduleExcludes )
+    {
+        add( moduleBasedir, module, moduleExcludes );
+    }
+
+    private void add( File moduleBasedir, ParserModule module, Map<String, String> moduleExcludes )
+    {
+        if ( module.getExtensions() == null || module.getExtensions().length == 0 )
+        {
+            return;
+        }
+
+        String excludes = ( moduleExcludes == null ) ? null : moduleExcludes.get( module.getParserId() );
+
+        moduleSources.add( new ModuleSources( moduleBasedir, module, excludes ) );
+    }
+
+    /**
+     * Walk module source directories and dispatch source documents to their module.
+     *
+     * @return the source documents, by parser module in parser modules order
+     * @throws IOException if a directory cannot be read
+     */
+    List<ModuleSources> discover()
+        throws IOException
+    {
+        List<Path> roots = new ArrayList<Path>();
+        for ( ModuleSources sources : moduleSources )
+        {
+            if ( sources.basedir.isDirectory() && !roots.contains( sources.getPath() ) )
+            {
+                roots.add( sources.getPath() );
+            }
+        }
+
+        for ( final Path root : roots )
+        {
+            final List<ModuleSources> rootSources = new ArrayList<ModuleSources>();
+            for ( ModuleSources sources : moduleSources )
+            {
+                if ( sources.getPath().equals( root ) )
+                {
+                    rootSources.add( sources );
+                }
+            }
+
+            Files.walkFileTree( root, EnumSet.of( FileVisitOption.FOLLOW_LINKS ), Integer.MAX_VALUE,
+                                new SimpleFileVisitor<Path>()
+            {
+                @Override
+                public FileVisitResult visitFile( Path file, BasicFileAttributes attrs )
+                {
+                    if ( attrs.isRegularFile() )
+                    {
+                        String name = root.relativize( file ).toString();
+
+                        for ( ModuleSources sources : rootSources )
+                        {
+                            sources.dispatch( name );
+                        }
+                    }
+
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed( Path file, IOException exc )
+                {
+                    // unreadable file or symbolic link loop: ignored, like directory scanner does
+                    return FileVisitResult.CONTINUE;
+                }
+            } );
+        }
+
+        return moduleSources;
+    }
+
+    /**
+     * Source documents of a parser module.
+     */
+    static class ModuleSources
+    {
+        private final File basedir;
+
+        private final ParserModule module;
+
+        private final MatchPatterns excludes;
+
+        /**
+         * Extension by lower case file name suffix, with or without Velocity extension.
+         */
+        private final Map<String, String> suffixes = new HashMap<String, String>();
+
+        private final Map<String, List<String>> documents = new LinkedHashMap<String, List<String>>();
+
+        private final Map<String, List<String>> velocityDocuments = new HashMap<String, List<String>>();
+
+        ModuleSources( File basedir, ParserModule module, String excludes )
+        {
+            this.basedir = basedir;
+            this.module = module;
+
+            List<String> patterns = new ArrayList<String>( Arrays.asList( AbstractScanner.DEFAULTEXCLUDES ) );
+            if ( excludes != null )
+            {
+                patterns.addAll( Arrays.asList( StringUtils.split( excludes, "," ) ) );
+            }
+            for ( int i = 0; i < patterns.size(); i++ )
+            {
+                patterns.set( i, normalizePattern( patterns.get( i ) ) );
+            }
+            this.excludes = MatchPatterns.from( patterns );
+
+            for ( String extension : module.getExtensions() )
+            {
+                String suffix = "." + extension.toLowerCase( Locale.ENGLISH );
+                suffixes.put( suffix, extension );
+                suffixes.put( suffix + VELOCITY_EXTENSION, extension );
+
+                documents.put( extension, new ArrayList<String>() );
+                velocityDocuments.put( extension, new ArrayList<String>() );
+            }
+        }
+
+        /**
+         * Record a file if it has one of the module extensions, or one of them followed by the Velocity extension.
+         *
+         * @param name the file path relative to the module source directory
+         */
+        void dispatch( String name )
+        {
+            String lowerCaseName = name.toLowerCase( Locale.ENGLISH );
+            int nameStart = lowerCaseName.lastIndexOf( File.separatorChar ) + 1;
+
+            boolean excluded = false;
+            for ( int i = lowerCaseName.indexOf( '.', nameStart ); i >= 0; i = lowerCaseName.indexOf( '.', i + 1 ) )
+            {
+                String extension = suffixes.get( lowerCaseName.substring( i ) );
+
+                if ( extension == null )
+                {
+                    continue;
+                }
+
+                // exclude patterns are matched only for candidate documents
+                if ( excluded || excludes.matches( name, true ) )
+                {
+                    excluded = true;
+                    continue;
+                }
+
+                if ( lowerCaseName.endsWith( VELOCITY_EXTENSION ) )
+                {
+                    velocityDocuments.get( extension ).add( name );
+                }
+                else
+                {
+                    documents.get( extension ).add( name );
+                }
+            }
+        }
+
+        File getBasedir()
+        {
+            return basedir;
+        }
+
+        private Path getPath()
+        {
+            return basedir.getAbsoluteFile().toPath();
+        }
+
+        ParserModule getModule()
+        {
+            return module;
+        }
+
+        /**
+         * Get the source documents for a module extension: documents with the extension, then documents with the
+         * extension followed by the Velocity extension.
+         *
+         * @param extension the module extension
+         * @return the document paths relative to the module source directory
+         */
+        List<String> getDocuments( String extension )
+        {
+            List<String> docs = new ArrayList<String>( documents.get( extension ) );
+            docs.addAll( velocityDocuments.get( extension ) );
+            return docs;
+        }
+
+        /**
+         * Normalize a pattern like directory scanners do: platform file separator, and directory content for
+         * patterns ending with a separator.
+         */
+        private static String normalizePattern( String pattern )
+        {
+            String normalized = pattern.replace( '/', File.separatorChar ).replace( '\\', File.separatorChar );
+
+            if ( normalized.endsWith( File.separator ) )
+            {
+                normalized += "**";
+            }
+
+            return normalized;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package org.apache.maven.doxia.siterenderer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * Document content with html head and body written directly to the site template output, without being converted
+ * to strings first.
+ *
+ * @since 1.9.3
+ */
+public interface StreamableDocumentContent
+    extends DocumentContent
+{
+    /**
+     * Get the html head of the document, to be written to the site template output.
+     * @return the document html head
+     */
+    RenderableContent getHeadContent();
+
+    /**
+     * Get the html body of the document, to be written to the site template output.
+     * @return the document body
+     */
+    RenderableContent getBodyContent();
+}
@@ -0,0 +1,114 @@
+package org.apache.maven.doxia.siterenderer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * Reader that writes content read to a writer too. The writer is closed with the reader.
+ *
+ * @since 1.9.3
+ */
+class TeeReader
+    extends FilterReader
+{
+    private final Writer branch;
+
+    /**
+     * @param in the reader to read from
+     * @param branch the writer to copy content read to
+     */
+    TeeReader( Reader in, Writer branch )
+    {
+        super( in );
+        this.branch = branch;
+    }
+
+    @Override
+    public int read()
+        throws IOException
+    {
+        int c = in.read();
+        if ( c >= 0 )
+        {
+            branch.write( c );
+        }
+        return c;
+    }
+
+    @Override
+    public int read( char[] cbuf, int off, int len )
+        throws IOException
+    {
+        int n = in.read( cbuf, off, len );
+        if ( n > 0 )
+        {
+            branch.write( cbuf, off, n );
+        }
+        return n;
+    }
+
+    @Override
+    public long skip( long n )
+        throws IOException
+    {
+        // skipped content must be copied too
+        char[] cbuf = new char[(int) Math.min( n, 8192 )];
+        int read = read( cbuf, 0, cbuf.length );
+        return Math.max( read, 0 );
+    }
+
+    @Override
+    public boolean markSupported()
+    {
+        return false;
+    }
+
+    @Override
+    public void mark( int readAheadLimit )
+        throws IOException
+    {
+        throw new IOException( "mark() not supported" );
+    }
+
+    @Override
+    public void reset()
+        throws IOException
+    {
+        throw new IOException( "reset() not supported" );
+    }
+
+    @Override
+    public void close()
+        throws IOException
+    {
+        try
+        {
+            in.close();
+        }
+        finally
+        {
+            branch.close();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.apache.maven.doxia.siterenderer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writer that writes content to a second writer too.
+ *
+ * @since 1.9.3
+ */
+class TeeWriter
+    extends FilterWriter
+{
+    private final Writer branch;
+
+    /**
+     * @param out the main writer
+     * @param branch the writer to copy content to
+     */
+    TeeWriter( Writer out, Writer branch )
+    {
+        super( out );
+        this.branch = branch;
+    }
+
+    @Override
+    public void write( int c )
+        throws IOException
+    {
+        out.write( c );
+        branch.write( c );
+    }
+
+    @Override
+    public void write( char[] cbuf, int off, int len )
+        throws IOException
+    {
+        out.write( cbuf, off, len );
+        branch.write( cbuf, off, len );
+    }
+
+    @Override
+    public void write( String str, int off, int len )
+        throws IOException
+    {
+        out.write( str, off, len );
+        branch.write( str, off, len );
+    }
+
+    @Override
+    public void flush()
+        throws IOException
+    {
+        out.flush();
+        branch.flush();
+    }
+
+    @Override
+    public void close()
+        throws IOException
+    {
+        try
+        {
+            out.close();
+        }
+        finally
+        {
+            branch.close();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.apache.maven.doxia.siterenderer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.text.DateFormat;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Site-invariant entries of the Velocity context of documents, computed once per site rendering context.
+ *
+ * @since 1.9.3
+ */
+class VelocityContextBase
+{
+    private final Object[] key;
+
+    private final Map<String, Object> entries;
+
+    private final DateFormat dateFormat;
+
+    private final DateFormat dateRevisionFormat;
+
+    /**
+     * @param key the site rendering context values the entries were computed from
+     * @param entries the site-invariant entries
+     * @param dateFormat the publish date format, cloned for every document since it is not thread-safe
+     * @param dateRevisionFormat the date revision format, cloned for every document since it is not thread-safe
+     */
+    VelocityContextBase( Object[] key, Map<String, Object> entries, DateFormat dateFormat,
+                         DateFormat dateRevisionFormat )
+    {
+        this.key = key;
+        this.entries = Collections.unmodifiableMap( entries );
+        this.dateFormat = dateFormat;
+        this.dateRevisionFormat = dateRevisionFormat;
+    }
+
+    /**
+     * Check that the entries were computed from the same site rendering context values: values are compared by
+     * identity, since they may be modified after the site rendering context creation.
+     *
+     * @param otherKey the current site rendering context values
+     * @return <code>true</code> if entries are still valid
+     */
+    boolean matches( Object[] otherKey )
+    {
+        if ( key.length != otherKey.length )
+        {
+            return false;
+        }
+
+        for ( int i = 0; i < key.length; i++ )
+        {
+            if ( key[i] != otherKey[i] )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    Map<String, Object> getEntries()
+    {
+        return entries;
+    }
+
+    DateFormat newDateFormat()
+    {
+        return (DateFormat) dateFormat.clone();
+    }
+
+    DateFormat newDateRevisionFormat()
+    {
+        return (DateFormat) dateRevisionFormat.clone();
+    }
+}
@@ -0,0 +1,164 @@
+package org.apache.maven.doxia.siterenderer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+ */
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.doxia.site.skin.SkinModel;
+import org.apache.velocity.Template;
+import org.apache.velocity.exception.ParseErrorException;
+import org.apache.velocity.exception.ResourceNotFoundException;
+import org.apache.velocity.exception.VelocityException;
+import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.runtime.parser.node.ASTDirective;
+import org.codehaus.plexus.component.annotations.Component;
+import org.codehaus.plexus.component.annotations.Requirement;
+import org.codehaus.plexus.logging.AbstractLogEnabled;
+import org.codehaus.plexus.velocity.VelocityComponent;
+
+/**
+ * Default site template engine: the site decoration template is a Velocity template, parsed once then merged with
+ * every document.
+ *
+ * @since 1.9.3
+ */
+@Component( role = SiteTemplateEngine.class, hint = SiteTemplateEngine.DEFAULT_ENGINE )
+public class VelocitySiteTemplateEngine
+    extends AbstractLogEnabled
+    implements SiteTemplateEngine
+{
+    @Requirement
+    private VelocityComponent velocity;
+
+    /**
+     * Macro libraries registered as global macros by the site decoration templates.
+     */
+    private final DecorationTemplate.MacroLibraryRegistration registration =
+        new DecorationTemplate.MacroLibraryRegistration();
+
+    /** {@inheritDoc} */
+    public SiteTemplate loadTemplate( SiteRenderingContext siteRenderingContext )
+        throws RendererException
+    {
+        String templateName = siteRenderingContext.getTemplateName();
+        SkinModel skinModel = siteRenderingContext.getSkinModel();
+        String encoding = ( skinModel == null ) ? null : skinModel.getEncoding();
+        Artifact skin = siteRenderingContext.getSkin();
+
+        try
+        {
+            Template template = ( encoding == null ) ? velocity.getEngine().getTemplate( templateName )
+                            : velocity.getEngine().getTemplate( templateName, encoding );
+
+            ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+            URL url = ( classLoader == null ) ? null : classLoader.getResource( templateName );
+
+            Set<String> libraries = new LinkedHashSet<String>();
+            List<URL> libraryUrls = new ArrayList<URL>();
+            findMacroLibraries( template, skinModel, encoding, libraries, libraryUrls );
+
+            return new DecorationTemplate( template, siteRenderingContext.getTemplateClassLoader(), url, libraries,
+                                           libraryUrls, registration );
+        }
+        catch ( ParseErrorException pee )
+        {
+            throw new RendererException( "Velocity parsing error while reading the site decoration template "
+                + ( ( skin == null ) ? ( "'" + templateName + "'" ) : ( "from " + skin.getId() + " skin" ) ),
+                                         pee );
+        }
+        catch ( ResourceNotFoundException rnfe )
+        {
+            throw new RendererException( "Could not find the site decoration template "
+                + ( ( skin == null ) ? ( "'" + templateName + "'" ) : ( "from " + skin.getId() + " skin" ) ),
+                                         rnfe );
+        }
+    }
+
+    /**
+     * Find the macro libraries parsed by a site decoration template, that can be parsed once as global macros
+     * instead of on every merge. Macro libraries are declared in the skin descriptor, or have a name ending with
+     * <code>macros.vm</code>, and must contain only macro definitions.
+     *
+     * @param template the site decoration template, not modified
+     * @param skinModel the skin descriptor, or <code>null</code>
+     * @param encoding the skin encoding, or <code>null</code>
+     * @param libraries the names of the macro libraries found
+     * @param libraryUrls the locations of the macro libraries found
+     */
+    private void findMacroLibraries( Template template, SkinModel skinModel, String encoding, Set<String> libraries,
+                                     List<URL> libraryUrls )
+    {
+        Object localScope = velocity.getEngine().getProperty( RuntimeConstants.VM_PERM_INLINE_LOCAL );
+        if ( Boolean.parseBoolean( String.valueOf( localScope ) ) )
+        {
+            // macros of a library would not be visible to the template
+            return;
+        }
+
+        List<String> declared =
+            ( skinModel == null ) ? Collections.<String>emptyList() : skinModel.getMacroLibraries();
+
+        for ( ASTDirective parse : DecorationTemplate.getLiteralParses( template ) )
+        {
+            String name = DecorationTemplate.getParsedName( parse );
+            if ( !declared.contains( name ) && !name.endsWith( "macros.vm" ) )
+            {
+                continue;
+            }
+
+            try
+            {
+                Template library = ( encoding == null ) ? velocity.getEngine().getTemplate( name )
+                                : velocity.getEngine().getTemplate( name, encoding );
+
+                if ( !DecorationTemplate.isMacroLibrary( library ) )
+                {
+                    getLogger().debug( "Not a macro library, parsed on every merge: " + name );
+                    continue;
+                }
+            }
+            catch ( VelocityException e )
+            {
+                getLogger().debug( "Failed to load macro library " + name + ", parsed on every merge: "
+                    + e.getMessage() );
+                continue;
+            }
+
+            libraries.add( name );
+
+            String resource = name.startsWith( "/" ) ? name.substring( 1 ) : name;
+            ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+            URL libraryUrl = ( classLoader == null ) ? null : classLoader.getResource( resource );
+            if ( libraryUrl != null )
+            {
+                libraryUrls.add( libraryUrl );
+            }
+
+            getLogger().debug( "Macro library parsed once: " + name );
+        }
+    }
+}
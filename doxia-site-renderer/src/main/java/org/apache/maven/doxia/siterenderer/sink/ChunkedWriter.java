@@ -0,0 +1,225 @@
+package org.apache.maven.doxia.siterenderer.sink;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writer to a list of character chunks, reusable once reset: unlike a <code>StringWriter</code>, content is never
+ * copied when growing, and chunks allocated for a content are kept for the next one.
+ * Not thread-safe.
+ *
+ * @since 1.9.3
+ */
+class ChunkedWriter
+    extends Writer
+{
+    private static final int MIN_CHUNK_SIZE = 1024;
+
+    private static final int MAX_CHUNK_SIZE = 64 * 1024;
+
+    private final List<char[]> chunks = new ArrayList<char[]>();
+
+    private char[] chunk;
+
+    private int chunkIndex;
+
+    /**
+     * Count of characters written to the current chunk: previous chunks are full.
+     */
+    private int position;
+
+    private int length;
+
+    /**
+     * @param capacity the initial capacity, usually the size of a previous content
+     */
+    ChunkedWriter( int capacity )
+    {
+        chunk = new char[Math.max( MIN_CHUNK_SIZE, capacity )];
+        chunks.add( chunk );
+    }
+
+    @Override
+    public void write( int c )
+    {
+        if ( position == chunk.length )
+        {
+            nextChunk();
+        }
+        chunk[position++] = (char) c;
+        length++;
+    }
+
+    @Override
+    public void write( char[] cbuf, int off, int len )
+    {
+        while ( len > 0 )
+        {
+            if ( position == chunk.length )
+            {
+                nextChunk();
+            }
+            int n = Math.min( len, chunk.length - position );
+            System.arraycopy( cbuf, off, chunk, position, n );
+            position += n;
+            length += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void write( String str, int off, int len )
+    {
+        while ( len > 0 )
+        {
+            if ( position == chunk.length )
+            {
+                nextChunk();
+            }
+            int n = Math.min( len, chunk.length - position );
+            str.getChars( off, off + n, chunk, position );
+            position += n;
+            length += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void write( String str )
+    {
+        write( str, 0, str.length() );
+    }
+
+    private void nextChunk()
+    {
+        chunkIndex++;
+        if ( chunkIndex < chunks.size() )
+        {
+            chunk = chunks.get( chunkIndex );
+        }
+        else
+        {
+            chunk = new char[Math.min( MAX_CHUNK_SIZE, Math.max( MIN_CHUNK_SIZE, length ) )];
+            chunks.add( chunk );
+        }
+        position = 0;
+    }
+
+    /**
+     * @return the count of characters written
+     */
+    int length()
+    {
+        return length;
+    }
+
+    /**
+     * @return the count of characters that can be written without allocating
+     */
+    int capacity()
+    {
+        int capacity = 0;
+        for ( char[] c : chunks )
+        {
+            capacity += c.length;
+        }
+        return capacity;
+    }
+
+    /**
+     * Write the content to another writer, without copying it.
+     *
+     * @param out the writer to write content to
+     * @throws IOException if the content cannot be written
+     */
+    void writeTo( Writer out )
+        throws IOException
+    {
+        for ( int i = 0; i < chunkIndex; i++ )
+        {
+            char[] c = chunks.get( i );
+            out.write( c, 0, c.length );
+        }
+        out.write( chunk, 0, position );
+    }
+
+    /**
+     * Discard the content, to reuse the writer: chunks are merged into a single chunk of the same capacity, so that a
+     * content of the same size can be converted to a string with a single copy next time.
+     */
+    void reset()
+    {
+        if ( chunks.size() > 1 )
+        {
+            int capacity = capacity();
+            chunks.clear();
+            chunks.add( new char[capacity] );
+        }
+        chunk = chunks.get( 0 );
+        chunkIndex = 0;
+        position = 0;
+        length = 0;
+    }
+
+    @Override
+    public String toString()
+    {
+        if ( chunkIndex == 0 )
+        {
+            return new String( chunk, 0, position );
+        }
+
+        char[] content = new char[length];
+        int offset = 0;
+        for ( int i = 0; i < chunkIndex; i++ )
+        {
+            char[] c = chunks.get( i );
+            System.arraycopy( c, 0, content, offset, c.length );
+            offset += c.length;
+        }
+        System.arraycopy( chunk, 0, content, offset, position );
+
+        return new String( content );
+    }
+
+    /**
+     * Do nothing.
+     */
+    @Override
+    public void flush()
+    {
+        // nop
+    }
+
+    /**
+     * Do nothing: the writer can still be written to, and is reused with {@link #reset()}.
+     */
+    @Override
+    public void close()
+    {
+        // nop
+    }
+}
@@ -0,0 +1,176 @@
+package org.apache.maven.doxia.siterenderer.sink;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writer that replaces the <code>$relativePath</code> token with the relative path of a document on the fly, without
+ * allocating: equivalent to <code>StringUtils.replace( text, "$relativePath", relativePath )</code> on the written
+ * content, even when a token is split across writes.
+ *
+ * @since 1.9.3
+ */
+class RelativePathWriter
+    extends FilterWriter
+{
+    static final String TOKEN = "$relativePath";
+
+    private final String relativePath;
+
+    /**
+     * Count of token characters matched by the last written characters, not written yet since the token may be
+     * completed by next writes.
+     */
+    private int matched;
+
+    /**
+     * @param out the writer to write replaced content to
+     * @param relativePath the replacement of the token
+     */
+    RelativePathWriter( Writer out, String relativePath )
+    {
+        super( out );
+        this.relativePath = relativePath;
+    }
+
+    @Override
+    public void write( int c )
+        throws IOException
+    {
+        if ( matched > 0 )
+        {
+            if ( c == TOKEN.charAt( matched ) )
+            {
+                if ( ++matched == TOKEN.length() )
+                {
+                    matched = 0;
+                    out.write( relativePath );
+                }
+                return;
+            }
+
+            writePending();
+        }
+
+        if ( c == '$' )
+        {
+            matched = 1;
+        }
+        else
+        {
+            out.write( c );
+        }
+    }
+
+    @Override
+    public void write( char[] cbuf, int off, int len )
+        throws IOException
+    {
+        int end = off + len;
+        int start = off;
+
+        for ( int i = off; i < end; i++ )
+        {
+            char c = cbuf[i];
+            if ( c == '$' || matched > 0 )
+            {
+                if ( i > start )
+                {
+                    out.write( cbuf, start, i - start );
+                }
+                write( c );
+                start = i + 1;
+            }
+        }
+
+        if ( end > start )
+        {
+            out.write( cbuf, start, end - start );
+        }
+    }
+
+    @Override
+    public void write( String str, int off, int len )
+        throws IOException
+    {
+        int end = off + len;
+        int start = off;
+
+        for ( int i = off; i < end; i++ )
+        {
+            char c = str.charAt( i );
+            if ( c == '$' || matched > 0 )
+            {
+                if ( i > start )
+                {
+                    out.write( str, start, i - start );
+                }
+                write( c );
+                start = i + 1;
+            }
+        }
+
+        if ( end > start )
+        {
+            out.write( str, start, end - start );
+        }
+    }
+
+    /**
+     * @return the start of a token written but not matched yet, empty if none
+     */
+    String getPending()
+    {
+        return TOKEN.substring( 0, matched );
+    }
+
+    private void writePending()
+        throws IOException
+    {
+        out.write( TOKEN, 0, matched );
+        matched = 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The start of a token is not flushed, since it may be completed by next writes: it is written on close.
+     */
+    @Override
+    public void flush()
+        throws IOException
+    {
+        out.flush();
+    }
+
+    @Override
+    public void close()
+        throws IOException
+    {
+        if ( matched > 0 )
+        {
+            writePending();
+        }
+        out.close();
+    }
+}
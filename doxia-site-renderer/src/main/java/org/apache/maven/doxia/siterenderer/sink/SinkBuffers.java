@@ -0,0 +1,86 @@
+package org.apache.maven.doxia.siterenderer.sink;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * Buffers of a {@link SiteRendererSink}, reused for the next document rendered by the same thread once released.
+ * Released buffers keep their capacity, so that the next document of the thread is written without growing them.
+ *
+ * @since 1.9.3
+ */
+class SinkBuffers
+{
+    /**
+     * Buffers bigger than this count of characters are not kept for reuse, to not hold memory for a single huge
+     * document.
+     */
+    private static final int MAX_POOLED_CAPACITY = 4 * 1024 * 1024;
+
+    private static final ThreadLocal<SinkBuffers> POOL = new ThreadLocal<SinkBuffers>();
+
+    final ChunkedWriter body;
+
+    final ChunkedWriter head;
+
+    final StringBuilder sectionTitle = new StringBuilder();
+
+    final StringBuilder sectionTitleWrite = new StringBuilder();
+
+    private SinkBuffers()
+    {
+        body = new ChunkedWriter( 0 );
+        head = new ChunkedWriter( 0 );
+    }
+
+    /**
+     * @return the buffers released by the current thread, or new buffers if none
+     */
+    static SinkBuffers acquire()
+    {
+        SinkBuffers buffers = POOL.get();
+
+        if ( buffers == null )
+        {
+            return new SinkBuffers();
+        }
+
+        POOL.remove();
+        return buffers;
+    }
+
+    /**
+     * Reset buffers and keep them for the next document rendered by the current thread.
+     */
+    void release()
+    {
+        int bodyCapacity = body.capacity();
+        if ( bodyCapacity > MAX_POOLED_CAPACITY || head.capacity() > MAX_POOLED_CAPACITY )
+        {
+            return;
+        }
+
+        body.reset();
+        head.reset();
+        sectionTitle.setLength( 0 );
+        sectionTitleWrite.setLength( 0 );
+
+        POOL.set( this );
+    }
+}
@@ -19,7 +19,7 @@ package org.apache.maven.doxia.siterenderer.sink;
  * under the License.
  */
 
-import java.io.StringWriter;
+import java.io.IOException;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -32,8 +32,9 @@ import org.apache.maven.doxia.markup.HtmlMarkup;
 import org.apache.maven.doxia.module.xhtml5.Xhtml5Sink;
 import org.apache.maven.doxia.sink.Sink;
 import org.apache.maven.doxia.sink.SinkEventAttributes;
-import org.apache.maven.doxia.siterenderer.DocumentContent;
+import org.apache.maven.doxia.siterenderer.RenderableContent;
 import org.apache.maven.doxia.siterenderer.RenderingContext;
+import org.apache.maven.doxia.siterenderer.StreamableDocumentContent;
 import org.apache.maven.doxia.util.HtmlTools;
 import org.codehaus.plexus.util.StringUtils;
 
@@ -47,7 +48,7 @@ import org.codehaus.plexus.util.StringUtils;
 @SuppressWarnings( "checkstyle:methodname" )
 public class SiteRendererSink
     extends Xhtml5Sink
-    implements Sink, org.codehaus.doxia.sink.Sink, DocumentContent
+    implements Sink, org.codehaus.doxia.sink.Sink, StreamableDocumentContent
 {
     private String date = "";
 
@@ -55,19 +56,33 @@ public class SiteRendererSink
 
     private List<String> authors = new ArrayList<String>();
 
-    private final StringWriter headWriter;
+    /**
+     * Body, head and section title buffers, <code>null</code> once released.
+     */
+    private SinkBuffers buffers;
 
-    private StringBuilder sectionTitleBuffer;
+    /**
+     * Head and body content kept once the buffers are released, <code>null</code> before.
+     */
+    private String releasedHead;
 
-    private StringBuilder sectionTitleWriteBuffer;
+    private String releasedBody;
 
     private boolean sectionHasID;
 
     private boolean isSectionTitle;
 
+    /**
+     * Are section title text and output collected in buffers, for anchor generation?
+     */
+    private boolean bufferingSectionTitle;
+
     private Set<String> anchorsInSectionTitle;
 
-    private final Writer writer;
+    /**
+     * Replaces <code>$relativePath</code> in body content, <code>null</code> without rendering context.
+     */
+    private final RelativePathWriter relativePathWriter;
 
     private RenderingContext renderingContext;
 
@@ -78,27 +93,67 @@ public class SiteRendererSink
      */
     public SiteRendererSink( RenderingContext renderingContext )
     {
-        this( new StringWriter(), renderingContext );
+        this( SinkBuffers.acquire(), renderingContext );
     }
 
     /**
      * Construct a new SiteRendererSink for a document.
      *
-     * @param writer the writer for the sink.
+     * @param buffers the buffers for the sink.
      * @param renderingContext the document's RenderingContext.
      */
-    private SiteRendererSink( StringWriter writer, RenderingContext renderingContext )
+    private SiteRendererSink( SinkBuffers buffers, RenderingContext renderingContext )
     {
-        super( writer );
+        this( buffers, ( renderingContext == null ) ? null
+                        : new RelativePathWriter( buffers.body, getRelativePath( renderingContext ) ),
+              renderingContext );
+    }
 
-        this.writer = writer;
-        this.headWriter = new StringWriter();
+    private SiteRendererSink( SinkBuffers buffers, RelativePathWriter relativePathWriter,
+                              RenderingContext renderingContext )
+    {
+        super( ( relativePathWriter == null ) ? buffers.body : relativePathWriter );
+
+        this.buffers = buffers;
+        this.relativePathWriter = relativePathWriter;
         this.renderingContext = renderingContext;
 
         /* the template is expected to have used the main tag, which can be used only once */
         super.contentStack.push( HtmlMarkup.MAIN );
     }
 
+    /**
+     * Close this sink and release its buffers, to be reused for the next document rendered by the current thread.
+     * The head and body content are kept as strings, still returned by {@link #getHead()} and {@link #getBody()}
+     * once released, but writing more content throws an <code>IllegalStateException</code>. The site renderer
+     * releases the sink of a Doxia document once it is merged into the site template.
+     *
+     * @since 1.9.3
+     */
+    public void release()
+    {
+        if ( buffers != null )
+        {
+            close();
+
+            releasedHead = getHead();
+            releasedBody = getBody();
+
+            SinkBuffers released = buffers;
+            buffers = null;
+            released.release();
+        }
+    }
+
+    private SinkBuffers getBuffers()
+    {
+        if ( buffers == null )
+        {
+            throw new IllegalStateException( "The sink content has been released" );
+        }
+        return buffers;
+    }
+
     /** {@inheritDoc} */
     @Override
     public void title_()
@@ -225,18 +280,18 @@ public class SiteRendererSink
 
         super.onSectionTitle( depth, attributes );
 
-        this.sectionTitleBuffer = new StringBuilder();
-        this.sectionTitleWriteBuffer = new StringBuilder();
+        getBuffers().sectionTitle.setLength( 0 );
+        getBuffers().sectionTitleWrite.setLength( 0 );
+        this.bufferingSectionTitle = true;
     }
 
     /** {@inheritDoc} */
     @Override
     protected void onSectionTitle_( int depth )
     {
-        String sectionTitle = sectionTitleBuffer.toString();
-        this.sectionTitleBuffer = null;
-        String sectionWriteTitle = sectionTitleWriteBuffer.toString();
-        this.sectionTitleWriteBuffer = null;
+        String sectionTitle = getBuffers().sectionTitle.toString();
+        String sectionWriteTitle = getBuffers().sectionTitleWrite.toString();
+        this.bufferingSectionTitle = false;
 
         if ( !StringUtils.isEmpty( sectionTitle ) )
         {
@@ -266,10 +321,10 @@ public class SiteRendererSink
     @Override
     public void text( String text )
     {
-        if ( sectionTitleBuffer != null )
+        if ( bufferingSectionTitle )
         {
             // this implies we're inside a section title, collect text events for anchor generation
-            sectionTitleBuffer.append( text );
+            getBuffers().sectionTitle.append( text );
         }
 
         super.text( text );
@@ -279,40 +334,36 @@ public class SiteRendererSink
     @Override
     protected void write( String text )
     {
-        String txt = text;
-
         if ( isHeadFlag() )
         {
-            headWriter.write( unifyEOLs( txt ) );
+            getBuffers().head.write( unifyEOLs( text ) );
 
             return;
         }
 
-        if ( renderingContext != null )
-        {
-            String relativePathToBasedir = renderingContext.getRelativePath();
-
-            if ( relativePathToBasedir == null )
-            {
-                txt = StringUtils.replace( txt, "$relativePath", "." );
-            }
-            else
-            {
-                txt = StringUtils.replace( txt, "$relativePath", relativePathToBasedir );
-            }
-        }
+        // $relativePath is replaced when written to the body writer
 
-        if ( sectionTitleWriteBuffer != null )
+        if ( bufferingSectionTitle )
         {
             // this implies we're inside a section title, collect text events for anchor generation
-            sectionTitleWriteBuffer.append( txt );
+            getBuffers().sectionTitleWrite.append( text );
         }
         else
         {
-            super.write( txt );
+            // the body writer wraps the body buffer, reused once released
+            getBuffers();
+
+            super.write( text );
         }
     }
 
+    private static String getRelativePath( RenderingContext renderingContext )
+    {
+        String relativePathToBasedir = renderingContext.getRelativePath();
+
+        return ( relativePathToBasedir == null ) ? "." : relativePathToBasedir;
+    }
+
     // DocumentContent interface
 
     /** {@inheritDoc} */
@@ -336,13 +387,90 @@ public class SiteRendererSink
     /** {@inheritDoc} */
     public String getBody()
     {
-        return writer.toString();
+        if ( buffers == null && releasedBody != null )
+        {
+            return releasedBody;
+        }
+
+        String body = getBuffers().body.toString();
+
+        if ( relativePathWriter != null )
+        {
+            String pending = relativePathWriter.getPending();
+            if ( pending.length() > 0 )
+            {
+                body += pending;
+            }
+        }
+
+        return body;
     }
 
     /** {@inheritDoc} */
     public String getHead()
     {
-        return headWriter.toString();
+        if ( buffers == null && releasedHead != null )
+        {
+            return releasedHead;
+        }
+
+        return getBuffers().head.toString();
+    }
+
+    /** {@inheritDoc} */
+    public RenderableContent getHeadContent()
+    {
+        return new RenderableContent()
+        {
+            @Override
+            public void writeTo( Writer writer )
+                throws IOException
+            {
+                if ( buffers == null )
+                {
+                    writer.write( getHead() );
+                    return;
+                }
+
+                buffers.head.writeTo( writer );
+            }
+
+            @Override
+            protected String createString()
+            {
+                return getHead();
+            }
+        };
+    }
+
+    /** {@inheritDoc} */
+    public RenderableContent getBodyContent()
+    {
+        return new RenderableContent()
+        {
+            @Override
+            public void writeTo( Writer writer )
+                throws IOException
+            {
+                if ( buffers == null )
+                {
+                    writer.write( getBody() );
+                    return;
+                }
+
+                buffers.body.writeTo( writer );
+                if ( relativePathWriter != null )
+                {
+                    writer.write( relativePathWriter.getPending() );
+                }
+            }
+
+            @Override
+            protected String createString()
+            {
+                return getBody();
+            }
+        };
     }
 
     /** {@inheritDoc} */
@@ -0,0 +1,108 @@
+package org.apache.maven.doxia.siterenderer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Collections;
+
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.exception.MethodInvocationException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class CachingRenderToolTest
+{
+    public static class Page
+    {
+        public String getName()
+        {
+            return "index";
+        }
+
+        public String fail()
+        {
+            throw new IllegalStateException( "merge failure" );
+        }
+    }
+
+    private static CachingRenderTool tool( EvalCache cache )
+    {
+        CachingRenderTool tool = new CachingRenderTool();
+        tool.configure( Collections.singletonMap( CachingRenderTool.KEY_EVAL_CACHE, cache ) );
+        return tool;
+    }
+
+    private static VelocityContext context()
+    {
+        VelocityContext context = new VelocityContext();
+        context.put( "page", new Page() );
+        return context;
+    }
+
+    @Test
+    public void testEval()
+    {
+        EvalCache cache = new EvalCache();
+        CachingRenderTool tool = tool( cache );
+
+        assertEquals( "page index", tool.eval( context(), "page $page.name" ) );
+        assertEquals( "page index", tool.eval( context(), "page $page.name" ) );
+        assertEquals( 1, cache.getMisses() );
+        assertEquals( 1, cache.getHits() );
+    }
+
+    @Test
+    public void testParseFailureParsedOnce()
+    {
+        EvalCache cache = new EvalCache();
+        CachingRenderTool tool = tool( cache );
+
+        // evaluated by RenderTool, which catches exceptions by default
+        assertNull( tool.eval( context(), "#if( $page" ) );
+        assertNull( tool.eval( context(), "#if( $page" ) );
+        assertEquals( 1, cache.getMisses() );
+    }
+
+    @Test
+    public void testMergeFailure()
+    {
+        EvalCache cache = new EvalCache();
+        CachingRenderTool tool = tool( cache );
+
+        // caught like RenderTool does by default, without evaluating the snippet again
+        assertNull( tool.eval( context(), "$page.fail()" ) );
+        assertEquals( 1, cache.getMisses() );
+        assertEquals( 0, cache.getHits() );
+
+        tool.setCatchExceptions( false );
+        try
+        {
+            tool.eval( context(), "$page.fail()" );
+            fail( "MethodInvocationException expected" );
+        }
+        catch ( MethodInvocationException e )
+        {
+            assertEquals( "merge failure", e.getWrappedThrowable().getMessage() );
+        }
+        assertEquals( 1, cache.getHits() );
+    }
+}
@@ -0,0 +1,73 @@
+package org.apache.maven.doxia.siterenderer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ChangedFileOutputStreamTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWriteIfChanged()
+        throws Exception
+    {
+        File file = new File( folder.getRoot(), "index.html" );
+
+        // new file
+        assertTrue( write( file, "Hello world" ) );
+        assertEquals( "Hello world", FileUtils.fileRead( file, "UTF-8" ) );
+
+        long lastModified = 1000000000000L;
+        file.setLastModified( lastModified );
+
+        // same content
+        assertFalse( write( file, "Hello world" ) );
+        assertEquals( lastModified, file.lastModified() );
+
+        // same length, different content
+        assertTrue( write( file, "Hello World" ) );
+        assertEquals( "Hello World", FileUtils.fileRead( file, "UTF-8" ) );
+
+        // different length
+        assertTrue( write( file, "Hello" ) );
+        assertEquals( "Hello", FileUtils.fileRead( file, "UTF-8" ) );
+    }
+
+    private boolean write( File file, String content )
+        throws IOException
+    {
+        ChangedFileOutputStream out = new ChangedFileOutputStream( file );
+        out.write( content.getBytes( "UTF-8" ) );
+        out.close();
+        return out.isWritten();
+    }
+}
@@ -34,12 +34,25 @@ import java.io.OutputStream;
 import java.io.Reader;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.jar.JarOutputStream;
 import java.util.zip.ZipEntry;
 
@@ -50,11 +63,19 @@ import org.apache.maven.doxia.site.decoration.DecorationModel;
 import org.apache.maven.doxia.site.decoration.io.xpp3.DecorationXpp3Reader;
 import org.apache.maven.doxia.siterenderer.sink.SiteRendererSink;
 import org.apache.maven.doxia.xsd.AbstractXmlValidator;
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.event.EventCartridge;
+import org.apache.velocity.app.event.IncludeEventHandler;
+import org.apache.velocity.runtime.parser.node.ASTDirective;
 import org.codehaus.plexus.PlexusTestCase;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
 import org.codehaus.plexus.util.FileUtils;
 import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.Os;
 import org.codehaus.plexus.util.ReaderFactory;
 import org.codehaus.plexus.util.StringUtils;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
 import org.xml.sax.EntityResolver;
 
 /**
@@ -194,6 +215,406 @@ public class DefaultSiteRendererTest
         validatePages();
     }
 
+    /**
+     * Render the site both sequentially and in parallel: output must be identical.
+     *
+     * @throws Exception if something goes wrong.
+     */
+    public void testRenderParallel()
+        throws Exception
+    {
+        File sequentialOutput = getTestFile( "target/output-sequential" );
+        File parallelOutput = getTestFile( "target/output-parallel" );
+        FileUtils.deleteDirectory( sequentialOutput );
+        FileUtils.deleteDirectory( parallelOutput );
+
+        DecorationModel decoration = new DecorationXpp3Reader()
+            .read( new FileReader( getTestFile( "src/test/resources/site/site.xml" ) ) );
+
+        SiteRenderingContext ctxt = getSiteRenderingContext( decoration, "src/test/resources/site", false );
+        ctxt.setRootDirectory( getTestFile( "" ) );
+        renderer.render( renderer.locateDocumentFiles( ctxt, true ).values(), ctxt, sequentialOutput );
+
+        ctxt = getSiteRenderingContext( decoration, "src/test/resources/site", false );
+        ctxt.setRootDirectory( getTestFile( "" ) );
+        ctxt.setRenderThreads( 4 );
+        renderer.render( renderer.locateDocumentFiles( ctxt, true ).values(), ctxt, parallelOutput );
+
+        List<String> sequentialFiles = FileUtils.getFileNames( sequentialOutput, "**/*", null, false );
+        List<String> parallelFiles = FileUtils.getFileNames( parallelOutput, "**/*", null, false );
+        Collections.sort( sequentialFiles );
+        Collections.sort( parallelFiles );
+        assertFalse( sequentialFiles.isEmpty() );
+        assertEquals( sequentialFiles, parallelFiles );
+
+        for ( String file : sequentialFiles )
+        {
+            assertTrue( "Parallel rendering differs for " + file,
+                        FileUtils.contentEquals( new File( sequentialOutput, file ), new File( parallelOutput, file ) ) );
+        }
+    }
+
+    /**
+     * Render the site multiple times with incremental rendering: unchanged documents are skipped whatever their output
+     * file modification date, but documents are rendered again when the decoration or an included template
+     * changes.
+     *
+     * @throws Exception if something goes wrong.
+     */
+    public void testIncrementalRendering()
+        throws Exception
+    {
+        File output = getTestFile( "target/output-incremental" );
+        FileUtils.deleteDirectory( output );
+
+        DecorationModel decoration = new DecorationXpp3Reader()
+            .read( new FileReader( getTestFile( "src/test/resources/site/site.xml" ) ) );
+
+        SiteRenderingContext ctxt = getSiteRenderingContext( decoration, "src/test/resources/site", false );
+        ctxt.setRootDirectory( getTestFile( "" ) );
+        ctxt.setIncrementalRendering( true );
+        renderer.render( renderer.locateDocumentFiles( ctxt, true ).values(), ctxt, output );
+
+        assertTrue( new File( output, RenderManifest.FILE_NAME ).isFile() );
+
+        File apt = new File( output, "apt.html" );
+        FileUtils.fileWrite( apt, "UTF-8", "stale" );
+        // an old output file is not a reason to render again
+        apt.setLastModified( 0 );
+
+        renderer.render( renderer.locateDocumentFiles( ctxt, true ).values(), ctxt, output );
+        assertEquals( "stale", FileUtils.fileRead( apt, "UTF-8" ) );
+
+        decoration.setName( decoration.getName() + " changed" );
+        renderer.render( renderer.locateDocumentFiles( ctxt, true ).values(), ctxt, output );
+        assertTrue( FileUtils.fileRead( apt, "UTF-8" ).contains( "</html>" ) );
+
+        // a change in a template included with #parse is detected
+        FileUtils.fileWrite( apt, "UTF-8", "stale" );
+        renderer.render( renderer.locateDocumentFiles( ctxt, true ).values(), ctxt, output );
+        assertEquals( "stale", FileUtils.fileRead( apt, "UTF-8" ) );
+
+        copyVm( "default-site-macros.vm", "\n## changed\n" );
+        renderer.render( renderer.locateDocumentFiles( ctxt, true ).values(), ctxt, output );
+        assertTrue( FileUtils.fileRead( apt, "UTF-8" ).contains( "</html>" ) );
+    }
+
+    /**
+     * Clash detection uses a case-folded index of output names: documents differing only by case could clash,
+     * documents with the same output name do clash.
+     *
+     * @throws Exception if something goes wrong.
+     */
+    public void testLocateDocumentFilesClashes()
+        throws Exception
+    {
+        File siteDirectory = getTestFile( "target/site-clash" );
+        FileUtils.deleteDirectory( siteDirectory );
+        new File( siteDirectory, "apt/dir" ).mkdirs();
+        new File( siteDirectory, "xdoc/dir" ).mkdirs();
+        FileUtils.fileWrite( new File( siteDirectory, "apt/dir/Doc.apt" ), "UTF-8", "" );
+        FileUtils.fileWrite( new File( siteDirectory, "xdoc/dir/doc.xml" ), "UTF-8", "" );
+        FileUtils.fileWrite( new File( siteDirectory, "xdoc/doc.xml" ), "UTF-8", "" );
+        FileUtils.fileWrite( new File( siteDirectory, "xdoc/dir/other.xml" ), "UTF-8", "" );
+
+        SiteRenderingContext ctxt = new SiteRenderingContext();
+        ctxt.addSiteDirectory( siteDirectory );
+        ctxt.setRootDirectory( getTestFile( "" ) );
+
+        if ( Os.isFamily( Os.FAMILY_WINDOWS ) )
+        {
+            try
+            {
+                renderer.locateDocumentFiles( ctxt, false );
+                fail( "RendererException expected" );
+            }
+            catch ( RendererException e )
+            {
+                assertTrue( e.getMessage(), e.getMessage().contains( "clashes with existing" ) );
+            }
+        }
+        else
+        {
+            // only a warning: both documents are kept
+            Map<String, DocumentRenderer> files = renderer.locateDocumentFiles( ctxt, false );
+
+            assertEquals( 4, files.size() );
+            assertTrue( files.containsKey( "dir/Doc.html" ) );
+            assertTrue( files.containsKey( "dir/doc.html" ) );
+            assertTrue( files.containsKey( "doc.html" ) );
+            assertTrue( files.containsKey( "dir/other.html" ) );
+        }
+
+        FileUtils.fileWrite( new File( siteDirectory, "apt/dir/other.apt" ), "UTF-8", "" );
+        try
+        {
+            renderer.locateDocumentFiles( ctxt, false );
+            fail( "RendererException expected" );
+        }
+        catch ( RendererException e )
+        {
+            assertTrue( e.getMessage(), e.getMessage().contains( "clashes with existing" ) );
+        }
+    }
+
+    /**
+     * Watch mode renders changed documents again, and the whole site with a new decoration model when the site
+     * descriptor changes.
+     *
+     * @throws Exception if something goes wrong.
+     */
+    public void testWatch()
+        throws Exception
+    {
+        File siteDirectory = getTestFile( "target/site-watch" );
+        File output = getTestFile( "target/output-watch" );
+        FileUtils.deleteDirectory( siteDirectory );
+        FileUtils.deleteDirectory( output );
+        FileUtils.copyDirectoryStructure( getTestFile( "src/test/resources/site/apt" ),
+                                          new File( siteDirectory, "apt" ) );
+        FileUtils.copyFile( getTestFile( "src/test/resources/site/site.xml" ), new File( siteDirectory, "site.xml" ) );
+
+        final File siteXml = new File( siteDirectory, "site.xml" );
+        SiteRenderingWatcher.ContextFactory contextFactory = new SiteRenderingWatcher.ContextFactory()
+        {
+            public SiteRenderingContext createContext()
+                throws IOException
+            {
+                Reader reader = ReaderFactory.newXmlReader( siteXml );
+                try
+                {
+                    SiteRenderingContext ctxt = getSiteRenderingContext( new DecorationXpp3Reader().read( reader ),
+                                                                         "target/site-watch", false );
+                    ctxt.setRootDirectory( getTestFile( "" ) );
+                    return ctxt;
+                }
+                catch ( XmlPullParserException e )
+                {
+                    throw new IOException( e );
+                }
+                finally
+                {
+                    IOUtil.close( reader );
+                }
+            }
+        };
+
+        final SiteRenderingWatcher watcher = new SiteRenderingWatcher( renderer, contextFactory.createContext(),
+                                                                       output,
+                                                                       new ConsoleLogger( Logger.LEVEL_WARN, "watch" ) );
+
+        // site descriptor files are watched with a context factory only
+        try
+        {
+            watcher.addWatchedFile( siteXml );
+            fail( "IllegalStateException expected" );
+        }
+        catch ( IllegalStateException e )
+        {
+            // expected
+        }
+        watcher.setContextFactory( contextFactory );
+        watcher.addWatchedFile( siteXml );
+
+        // renderings of the watcher, or failures
+        final BlockingQueue<Object> renderings = new LinkedBlockingQueue<Object>();
+        watcher.setListener( new SiteRenderingWatcher.Listener()
+        {
+            public void rendered( RendererException failure )
+            {
+                renderings.add( ( failure == null ) ? Boolean.TRUE : failure );
+            }
+        } );
+
+        final AtomicReference<IOException> watchFailure = new AtomicReference<IOException>();
+        Thread thread = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    watcher.watch();
+                }
+                catch ( IOException e )
+                {
+                    watchFailure.set( e );
+                    renderings.add( e );
+                }
+            }
+        };
+        thread.start();
+
+        try
+        {
+            // the render manifest is saved once every document is rendered
+            awaitRendering( renderings, new File( output, RenderManifest.FILE_NAME ), "" );
+            File apt = new File( output, "apt.html" );
+            FileUtils.fileWrite( new File( output, "cdc.html" ), "UTF-8", "unchanged" );
+
+            FileUtils.fileWrite( new File( siteDirectory, "apt/apt.apt" ), "UTF-8",
+                                 " -----\n Watched\n -----\n\nWatched\n\n Watched change.\n" );
+            awaitRendering( renderings, apt, "Watched change." );
+
+            FileUtils.fileWrite( new File( siteDirectory, "apt/new.apt" ), "UTF-8",
+                                 " -----\n New\n -----\n\nNew\n\n New document.\n" );
+            awaitRendering( renderings, new File( output, "new.html" ), "New document." );
+
+            // only changed documents are rendered
+            assertEquals( "unchanged", FileUtils.fileRead( new File( output, "cdc.html" ), "UTF-8" ) );
+
+            FileUtils.fileWrite( siteXml, "UTF-8",
+                                 FileUtils.fileRead( siteXml, "UTF-8" ).replace( "Quick Links", "Watched Links" ) );
+            awaitRendering( renderings, apt, "Watched Links" );
+        }
+        finally
+        {
+            watcher.close();
+            thread.join( 10000 );
+        }
+
+        assertFalse( thread.isAlive() );
+        assertNull( watchFailure.get() );
+    }
+
+    /**
+     * The preview server renders requested pages, cached until their source or a template included with
+     * <code>#parse</code> changes, and serves skin resources.
+     *
+     * @throws Exception if something goes wrong.
+     */
+    public void testPreviewServer()
+        throws Exception
+    {
+        File siteDirectory = getTestFile( "target/site-preview" );
+        FileUtils.deleteDirectory( siteDirectory );
+        FileUtils.copyDirectoryStructure( getTestFile( "src/test/resources/site/apt" ),
+                                          new File( siteDirectory, "apt" ) );
+        File included = new File( siteDirectory, "included.vm" );
+        FileUtils.fileWrite( included, "UTF-8", " Included one.\n" );
+        FileUtils.fileWrite( new File( siteDirectory, "apt/preview.apt.vm" ), "UTF-8",
+                             " -----\n Preview\n -----\n\nPreview\n\n#parse( \"" + included.getAbsolutePath()
+                                 + "\" )\n" );
+
+        DecorationModel decoration = new DecorationXpp3Reader()
+            .read( new FileReader( getTestFile( "src/test/resources/site/site.xml" ) ) );
+
+        SiteRenderingContext ctxt = getSiteRenderingContext( decoration, "target/site-preview", false );
+        ctxt.setRootDirectory( getTestFile( "" ) );
+
+        SitePreviewServer server =
+            new SitePreviewServer( renderer, ctxt, new InetSocketAddress( "localhost", 0 ), 10 );
+        server.start();
+        try
+        {
+            String base = "http://localhost:" + server.getAddress().getPort() + "/";
+
+            HttpURLConnection connection = (HttpURLConnection) new URL( base + "apt.html" ).openConnection();
+            assertEquals( 200, connection.getResponseCode() );
+            assertTrue( connection.getContentType().startsWith( "text/html" ) );
+            assertTrue( IOUtil.toString( connection.getInputStream(), "UTF-8" ).contains( "<html" ) );
+
+            // rendered pages are cached until their source changes
+            File source = new File( siteDirectory, "apt/apt.apt" );
+            FileUtils.fileWrite( source, "UTF-8", " -----\n Preview\n -----\n\nPreview\n\n Preview change.\n" );
+            connection = (HttpURLConnection) new URL( base + "apt.html" ).openConnection();
+            assertTrue( IOUtil.toString( connection.getInputStream(), "UTF-8" ).contains( "Preview change." ) );
+
+            // or a resource loaded by Velocity changes
+            connection = (HttpURLConnection) new URL( base + "preview.html" ).openConnection();
+            assertTrue( IOUtil.toString( connection.getInputStream(), "UTF-8" ).contains( "Included one." ) );
+            FileUtils.fileWrite( included, "UTF-8", " Included two.\n" );
+            included.setLastModified( included.lastModified() + 2000 );
+            connection = (HttpURLConnection) new URL( base + "preview.html" ).openConnection();
+            assertTrue( IOUtil.toString( connection.getInputStream(), "UTF-8" ).contains( "Included two." ) );
+
+            connection = (HttpURLConnection) new URL( base + "css/maven-base.css" ).openConnection();
+            assertEquals( 200, connection.getResponseCode() );
+            assertEquals( "text/css", connection.getContentType() );
+
+            connection = (HttpURLConnection) new URL( base + "default-site.vm" ).openConnection();
+            assertEquals( 404, connection.getResponseCode() );
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+
+    /**
+     * Wait for watcher renderings until a file contains some content: a file change may be seen in several
+     * renderings.
+     */
+    private static void awaitRendering( BlockingQueue<Object> renderings, File file, String content )
+        throws Exception
+    {
+        while ( true )
+        {
+            Object rendering = renderings.poll( 30, TimeUnit.SECONDS );
+            assertNotNull( "Timeout waiting for " + content + " in " + file, rendering );
+            if ( rendering instanceof Exception )
+            {
+                throw (Exception) rendering;
+            }
+            if ( file.isFile() && FileUtils.fileRead( file, "UTF-8" ).contains( content ) )
+            {
+                return;
+            }
+        }
+    }
+
+    /**
+     * A parsing failure at the start of a Velocity document larger than the pipe to the parser must be reported,
+     * without leaving the Velocity thread blocked on the full pipe.
+     *
+     * @throws Exception if something goes wrong.
+     */
+    public void testVelocityDocumentEarlyParseError()
+        throws Exception
+    {
+        File siteDirectory = getTestFile( "target/site-vm-error" );
+        FileUtils.deleteDirectory( siteDirectory );
+        File document = new File( siteDirectory, "xdoc/large.xml.vm" );
+        document.getParentFile().mkdirs();
+
+        StringBuilder content = new StringBuilder( "<document><body><section name=\"error\" <<<\n" );
+        while ( content.length() < 256 * 1024 )
+        {
+            content.append( "<p>Content of a document larger than the pipe to the parser.</p>\n" );
+        }
+        content.append( "</section></body></document>\n" );
+        FileUtils.fileWrite( document, "UTF-8", content.toString() );
+
+        final SiteRenderingContext ctxt =
+            getSiteRenderingContext( new DecorationModel(), "target/site-vm-error", false );
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            Future<Void> rendering = executor.submit( new Callable<Void>()
+            {
+                public Void call()
+                    throws Exception
+                {
+                    renderer.render( renderer.locateDocumentFiles( ctxt, true ).values(), ctxt,
+                                     getTestFile( "target/output-vm-error" ) );
+                    return null;
+                }
+            } );
+
+            rendering.get( 60, TimeUnit.SECONDS );
+            fail( "The parse error must be reported" );
+        }
+        catch ( ExecutionException e )
+        {
+            assertTrue( e.getCause() instanceof RendererException );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
     public void testExternalReport()
         throws Exception
     {
@@ -270,6 +691,32 @@ public class DefaultSiteRendererTest
         assertEquals( expectedResult, renderResult );
     }
 
+    /**
+     * Templates pass <code>$bodyContent</code> to methods with a <code>String</code> parameter.
+     *
+     * @throws Exception if something goes wrong.
+     */
+    public void testBodyContentString()
+        throws Exception
+    {
+        StringWriter writer = new StringWriter();
+
+        SiteRenderingContext siteRenderingContext = new SiteRenderingContext();
+        siteRenderingContext.setDecoration( new DecorationModel() );
+        siteRenderingContext.setTemplateName( "org/apache/maven/doxia/siterenderer/velocity-string-content.vm" );
+
+        RenderingContext context = new RenderingContext( new File( "" ), "document.html", "generator" );
+        SiteRendererSink sink = new SiteRendererSink( context );
+        sink.body();
+        sink.text( "Hello world" );
+        sink.body_();
+        renderer.mergeDocumentIntoSite( writer, sink, siteRenderingContext );
+
+        String renderResult = writer.toString();
+        assertTrue( renderResult, renderResult.startsWith( "Bye world|" ) );
+        assertTrue( renderResult, renderResult.endsWith( "|Hello world" ) );
+    }
+
     public void testVelocityToolManagerForSkin()
         throws Exception
     {
@@ -290,9 +737,15 @@ public class DefaultSiteRendererTest
         SiteRenderingContext siteRenderingContext =
             renderer.createContextForSkin( skin, attributes, new DecorationModel(), "defaultWindowTitle",
                                            Locale.ENGLISH );
+
+        // the skin template is parsed once, when the context is created
+        SiteTemplate siteTemplate = siteRenderingContext.getSiteTemplate();
+        assertNotNull( siteTemplate );
+
         RenderingContext context = new RenderingContext( new File( "" ), "document.html", "generator" );
         SiteRendererSink sink = new SiteRendererSink( context );
         renderer.mergeDocumentIntoSite( writer, sink, siteRenderingContext );
+        assertSame( siteTemplate, siteRenderingContext.getSiteTemplate() );
         String renderResult = writer.toString();
         String expectedResult = StringUtils.unifyLineSeparators(
             IOUtils.toString(
@@ -301,6 +754,60 @@ public class DefaultSiteRendererTest
         assertEquals( expectedResult, renderResult );
     }
 
+    public void testMacroLibraryParsedOnce()
+        throws Exception
+    {
+        SiteTemplateEngine engine =
+            (SiteTemplateEngine) lookup( SiteTemplateEngine.ROLE, SiteTemplateEngine.DEFAULT_ENGINE );
+        SiteRenderingContext ctxt =
+            getSiteRenderingContext( new DecorationModel(), "src/test/resources/site", false );
+
+        ClassLoader old = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader( getClassLoader() );
+        try
+        {
+            DecorationTemplate siteTemplate = (DecorationTemplate) engine.loadTemplate( ctxt );
+
+            // template then macro library
+            assertEquals( 2, siteTemplate.getResources().size() );
+            assertTrue( siteTemplate.getResources().get( 1 ).toExternalForm().endsWith( "default-site-macros.vm" ) );
+
+            // the parsed template, that may be shared by the Velocity resource cache, is not modified
+            List<ASTDirective> parses = DecorationTemplate.getLiteralParses( siteTemplate.getTemplate() );
+            assertEquals( 1, parses.size() );
+            assertEquals( "default-site-macros.vm", DecorationTemplate.getParsedName( parses.get( 0 ) ) );
+
+            // the first merge parses the macro library, next merges skip it with the same output
+            final List<String> included = new ArrayList<String>();
+            VelocityContext context = new VelocityContext();
+            EventCartridge cartridge = new EventCartridge();
+            cartridge.addIncludeEventHandler( new IncludeEventHandler()
+            {
+                public String includeEvent( String includeResourcePath, String currentResourcePath,
+                                            String directiveName )
+                {
+                    included.add( directiveName + ' ' + includeResourcePath );
+                    return includeResourcePath;
+                }
+            } );
+            cartridge.attachToContext( context );
+
+            StringWriter first = new StringWriter();
+            siteTemplate.merge( context, first );
+            assertEquals( Collections.singletonList( "parse default-site-macros.vm" ), included );
+
+            included.clear();
+            StringWriter second = new StringWriter();
+            siteTemplate.merge( context, second );
+            assertTrue( included.isEmpty() );
+            assertEquals( first.toString(), second.toString() );
+        }
+        finally
+        {
+            Thread.currentThread().setContextClassLoader( old );
+        }
+    }
+
     public void testMatchVersion()
         throws Exception
     {
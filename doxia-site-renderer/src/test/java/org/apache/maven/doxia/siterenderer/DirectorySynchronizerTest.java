@@ -0,0 +1,90 @@
+package org.apache.maven.doxia.siterenderer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.util.concurrent.Callable;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class DirectorySynchronizerTest
+{
+    @Test
+    public void testCopyChangedFiles()
+        throws Exception
+    {
+        File directory = new File( "target/directory-synchronizer" );
+        FileUtils.deleteDirectory( directory );
+        File source = new File( directory, "resources" );
+        File destination = new File( directory, "output" );
+
+        write( new File( source, "css/site.css" ), "body {}" );
+        write( new File( source, "images/logo.svg" ), "<svg/>" );
+        write( new File( source, "download/file.txt" ), "download" );
+        write( new File( source, ".svn/entries" ), "excluded" );
+
+        DirectorySynchronizer synchronizer = copy( source, destination );
+        assertEquals( 3, synchronizer.getOutdatedFiles().size() );
+        assertEquals( 0, synchronizer.getSkippedCount() );
+        assertEquals( "<svg/>", FileUtils.fileRead( new File( destination, "images/logo.svg" ) ) );
+        assertEquals( new File( source, "images/logo.svg" ).lastModified(),
+                      new File( destination, "images/logo.svg" ).lastModified() );
+        assertEquals( false, new File( destination, ".svn" ).exists() );
+
+        // nothing changed
+        synchronizer = copy( source, destination );
+        assertEquals( 0, synchronizer.getOutdatedFiles().size() );
+        assertEquals( 3, synchronizer.getSkippedCount() );
+
+        // changed source, and destination modified since last copy
+        File sourceFile = new File( source, "css/site.css" );
+        FileUtils.fileWrite( sourceFile, "body { color: black; }" );
+        File destinationFile = new File( destination, "download/file.txt" );
+        FileUtils.fileWrite( destinationFile, "modified" );
+        destinationFile.setLastModified( destinationFile.lastModified() - 10000 );
+
+        synchronizer = copy( source, destination );
+        assertEquals( 2, synchronizer.getOutdatedFiles().size() );
+        assertEquals( 1, synchronizer.getSkippedCount() );
+        assertEquals( "body { color: black; }", FileUtils.fileRead( new File( destination, "css/site.css" ) ) );
+        assertEquals( "download", FileUtils.fileRead( destinationFile ) );
+    }
+
+    private static void write( File file, String content )
+        throws Exception
+    {
+        file.getParentFile().mkdirs();
+        FileUtils.fileWrite( file, content );
+    }
+
+    private static DirectorySynchronizer copy( File source, File destination )
+        throws Exception
+    {
+        DirectorySynchronizer synchronizer = new DirectorySynchronizer( source, destination );
+        for ( Callable<Void> task : synchronizer.createTasks( 2 ) )
+        {
+            task.call();
+        }
+        return synchronizer;
+    }
+}
@@ -0,0 +1,87 @@
+package org.apache.maven.doxia.siterenderer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.StringWriter;
+
+import org.apache.velocity.Template;
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.runtime.RuntimeServices;
+import org.apache.velocity.runtime.RuntimeSingleton;
+import org.apache.velocity.runtime.parser.ParseException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class EvalCacheTest
+{
+    @Test
+    public void testParsedOnce()
+        throws Exception
+    {
+        EvalCache cache = new EvalCache();
+        RuntimeServices rsvc = RuntimeSingleton.getRuntimeServices();
+        String head = "<meta name=\"page\" content=\"$page\"/>";
+
+        Template template = cache.getTemplate( rsvc, head );
+        assertEquals( "<meta name=\"page\" content=\"index\"/>", merge( template, "index" ) );
+
+        // same content, different instance
+        Template cached = cache.getTemplate( rsvc, new String( head ) );
+        assertSame( template, cached );
+        assertEquals( "<meta name=\"page\" content=\"about\"/>", merge( cached, "about" ) );
+
+        assertEquals( 1, cache.getHits() );
+        assertEquals( 1, cache.getMisses() );
+    }
+
+    @Test
+    public void testParseFailure()
+    {
+        EvalCache cache = new EvalCache();
+        String vtl = "#if( $page";
+
+        assertFalse( cache.isInvalid( vtl ) );
+        try
+        {
+            cache.getTemplate( RuntimeSingleton.getRuntimeServices(), vtl );
+            fail( "ParseException expected" );
+        }
+        catch ( ParseException e )
+        {
+            // expected
+        }
+        assertTrue( cache.isInvalid( vtl ) );
+        assertEquals( 1, cache.getMisses() );
+    }
+
+    private static String merge( Template template, String page )
+    {
+        VelocityContext context = new VelocityContext();
+        context.put( "page", page );
+        StringWriter sw = new StringWriter();
+        template.merge( context, sw );
+        return sw.toString();
+    }
+}
@@ -0,0 +1,86 @@
+package org.apache.maven.doxia.siterenderer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LineSeparatorWriterTest
+{
+    private static final String EOL = "<EOL>";
+
+    @Test
+    public void testLineSeparator()
+        throws Exception
+    {
+        assertConverted( "Hello world" );
+        assertConverted( "Hello\nworld\n" );
+        assertConverted( "Hello\r\nworld\r\n" );
+        assertConverted( "\r\nHello\rworld\r" );
+        assertConverted( "\r\r\n\n\r\r" );
+    }
+
+    @Test
+    public void testNewlineSplitAcrossWrites()
+        throws Exception
+    {
+        StringWriter sw = new StringWriter();
+        Writer writer = new LineSeparatorWriter( sw, EOL );
+        writer.write( "Hello\r" );
+        writer.flush();
+        writer.write( "\nworld\r" );
+        writer.write( "!".toCharArray() );
+        writer.write( '\r' );
+        writer.write( '\n' );
+        writer.write( "end\r" );
+        writer.close();
+
+        assertEquals( "Hello" + EOL + "world\r!" + EOL + "end\r", sw.toString() );
+    }
+
+    private void assertConverted( String text )
+        throws IOException
+    {
+        String expected = text.replaceAll( "\r?\n", EOL );
+
+        // whole string
+        StringWriter sw = new StringWriter();
+        Writer writer = new LineSeparatorWriter( sw, EOL );
+        writer.write( text );
+        writer.close();
+        assertEquals( expected, sw.toString() );
+
+        // every possible split in 2 writes
+        for ( int i = 0; i <= text.length(); i++ )
+        {
+            sw = new StringWriter();
+            writer = new LineSeparatorWriter( sw, EOL );
+            writer.write( text.substring( 0, i ) );
+            writer.write( text.substring( i ).toCharArray() );
+            writer.close();
+            assertEquals( expected, sw.toString() );
+        }
+    }
+}
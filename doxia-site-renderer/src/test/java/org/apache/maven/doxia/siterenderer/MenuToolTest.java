@@ -0,0 +1,226 @@
+package org.apache.maven.doxia.siterenderer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.List;
+
+import org.apache.maven.doxia.site.decoration.Body;
+import org.apache.maven.doxia.site.decoration.DecorationModel;
+import org.apache.maven.doxia.site.decoration.Menu;
+import org.apache.maven.doxia.site.decoration.MenuItem;
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.runtime.log.NullLogChute;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.PathTool;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class MenuToolTest
+{
+    private static MenuItem item( String name, String href, MenuItem... items )
+    {
+        MenuItem item = new MenuItem();
+        item.setName( name );
+        item.setHref( href );
+        item.setCollapse( true );
+        for ( MenuItem subitem : items )
+        {
+            item.addItem( subitem );
+        }
+        return item;
+    }
+
+    private static MenuItem item( String name, String href, String img, String position )
+    {
+        MenuItem item = item( name, href );
+        item.setImg( img );
+        item.setPosition( position );
+        return item;
+    }
+
+    private static DecorationModel decoration( Menu... menus )
+    {
+        DecorationModel decoration = new DecorationModel();
+        decoration.setBody( new Body() );
+        for ( Menu menu : menus )
+        {
+            decoration.getBody().addMenu( menu );
+        }
+        return decoration;
+    }
+
+    private static DecorationModel decoration()
+    {
+        Menu menu = new Menu();
+        menu.setName( "Docs" );
+        menu.addItem( item( "Home", "index.html" ) );
+        menu.addItem( item( "Guides", "guides/index.html", item( "Intro", "guides/intro.html" ) ) );
+        menu.addItem( item( "Apache", "https://www.apache.org/" ) );
+        return decoration( menu );
+    }
+
+    @Test
+    public void testCollapsed()
+    {
+        DecorationModel decoration = decoration();
+        List<Menu> menus = decoration.getBody().getMenus();
+        String html = new MenuTool( decoration ).mainMenu( menus, ".", "index.html" );
+
+        assertEquals( "       <h5>Docs</h5>\n"
+            + "    <ul>\n"
+            + "     <li class=\"none\"><strong>Home</strong></li>\n"
+            + "     <li class=\"collapsed\"><a href=\"guides/index.html\" title=\"Guides\">Guides</a></li>\n"
+            + "     <li class=\"none\"><a href=\"https://www.apache.org/\" class=\"externalLink\" title=\"Apache\">"
+            + "Apache</a></li>\n"
+            + "    </ul>\n", html );
+    }
+
+    @Test
+    public void testExpandedByDescendant()
+    {
+        DecorationModel decoration = decoration();
+        List<Menu> menus = decoration.getBody().getMenus();
+        MenuTool tool = new MenuTool( decoration );
+        String html = tool.mainMenu( menus, "..", "../guides/intro.html" );
+
+        assertEquals( "       <h5>Docs</h5>\n"
+            + "    <ul>\n"
+            + "     <li class=\"none\"><a href=\"../index.html\" title=\"Home\">Home</a></li>\n"
+            + "     <li class=\"expanded\"><a href=\"../guides/index.html\" title=\"Guides\">Guides</a>\n"
+            + "      <ul>\n"
+            + "       <li class=\"none\"><strong>Intro</strong></li>\n"
+            + "      </ul></li>\n"
+            + "     <li class=\"none\"><a href=\"https://www.apache.org/\" class=\"externalLink\" title=\"Apache\">"
+            + "Apache</a></li>\n"
+            + "    </ul>\n", html );
+
+        // same result with links cached for the relative path
+        assertEquals( html, tool.mainMenu( menus, "..", "../guides/intro.html" ) );
+    }
+
+    @Test
+    public void testNoHref()
+    {
+        Menu menu = new Menu();
+        menu.addItem( item( "Section", null ) );
+        DecorationModel decoration = decoration( menu );
+        List<Menu> menus = decoration.getBody().getMenus();
+
+        assertEquals( "    <ul>\n"
+            + "     <li class=\"none\"><a href=\"../\" title=\"Section\">Section</a></li>\n"
+            + "    </ul>\n", new MenuTool( decoration ).mainMenu( menus, "..", "../index.html" ) );
+    }
+
+    @Test
+    public void testSameAsMainMenuMacro()
+        throws Exception
+    {
+        Menu docs = new Menu();
+        docs.setName( "Docs" );
+        docs.addItem( item( "Home", "index.html" ) );
+        MenuItem deep = item( "Deep", "guides/advanced/deep.html" );
+        MenuItem advanced = item( "Advanced", "guides/advanced/index.html", deep );
+        docs.addItem( item( "Guides", "guides/index.html", item( "Intro", "guides/intro.html" ), advanced ) );
+        MenuItem api = item( "API", "apidocs/index.html" );
+        api.setTarget( "_blank" );
+        MenuItem reference = item( "Reference", "reference/index.html", api );
+        reference.setCollapse( false );
+        docs.addItem( reference );
+        docs.addItem( item( "Section", null ) );
+
+        Menu project = new Menu();
+        project.setName( "Project" );
+        MenuItem download = item( "Download", "download.html", "images/download.png", "left" );
+        download.setAlt( "Get it" );
+        project.addItem( download );
+        MenuItem team = item( "Team", "team.html", "images/team.png", "right" );
+        team.setBorder( "0" );
+        team.setWidth( "16" );
+        team.setHeight( "16" );
+        team.setTitle( "The team" );
+        project.addItem( team );
+        MenuItem apache = item( "Apache", "https://www.apache.org/", "https://www.apache.org/logo.png", "right" );
+        apache.setTarget( "_blank" );
+        apache.setAlt( "ASF" );
+        project.addItem( apache );
+
+        // menus with images last and without items, the macro leaving their attributes in the context
+        Menu powered = new Menu();
+        powered.setName( "Powered by" );
+        powered.setImg( "images/logo.png" );
+        Menu sponsors = new Menu();
+        sponsors.setName( "Sponsors" );
+        sponsors.setImg( "https://www.apache.org/sponsors.png" );
+        sponsors.setPosition( "right" );
+        sponsors.setAlt( "ASF sponsors" );
+        sponsors.setBorder( "1" );
+        sponsors.setWidth( "100" );
+        sponsors.setHeight( "30" );
+        sponsors.setTitle( "Sponsors" );
+
+        DecorationModel decoration = decoration( docs, project, powered, sponsors );
+        List<Menu> menus = decoration.getBody().getMenus();
+        MenuTool tool = new MenuTool( decoration );
+
+        VelocityEngine engine = new VelocityEngine();
+        engine.setProperty( RuntimeConstants.RUNTIME_LOG_LOGSYSTEM, new NullLogChute() );
+        engine.init();
+
+        InputStream macros = getClass().getResourceAsStream( "resources/default-site-macros.vm" );
+        try
+        {
+            engine.evaluate( new VelocityContext(), new StringWriter(), "default-site-macros.vm",
+                             IOUtil.toString( macros, "UTF-8" ) );
+        }
+        finally
+        {
+            IOUtil.close( macros );
+        }
+
+        String[][] pages = {
+            { ".", "index.html" },
+            { ".", "download.html" },
+            { ".", "team.html" },
+            { ".", "reference/index.html" },
+            { "..", "../guides/intro.html" },
+            { "../..", "../../guides/advanced/deep.html" },
+            { "..", "../apidocs/index.html" } };
+
+        for ( String[] page : pages )
+        {
+            VelocityContext context = new VelocityContext();
+            context.put( "PathTool", new PathTool() );
+            context.put( "decoration", decoration );
+            context.put( "relativePath", page[0] );
+            context.put( "alignedFileName", page[1] );
+            context.put( "menus", menus );
+
+            StringWriter macro = new StringWriter();
+            engine.evaluate( context, macro, "mainMenu", "#mainMenu( $menus )" );
+
+            assertEquals( page[1], macro.toString(), tool.mainMenu( menus, page[0], page[1] ) );
+        }
+    }
+}
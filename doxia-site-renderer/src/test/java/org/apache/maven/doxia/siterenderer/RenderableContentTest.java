@@ -0,0 +1,99 @@
+package org.apache.maven.doxia.siterenderer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import org.apache.maven.doxia.siterenderer.sink.SiteRendererSink;
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.VelocityEngine;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class RenderableContentTest
+{
+    @Test
+    public void testVelocity()
+        throws Exception
+    {
+        SiteRendererSink sink =
+            new SiteRendererSink( new RenderingContext( new File( "target" ).getAbsoluteFile(), "index.apt" ) );
+        sink.paragraph();
+        sink.text( "Hello" );
+        sink.paragraph_();
+
+        VelocityContext context = new VelocityContext();
+        context.put( "bodyContent", sink.getBodyContent() );
+
+        VelocityEngine engine = new VelocityEngine();
+        engine.init();
+
+        // written directly
+        assertEquals( sink.getBody(), evaluate( engine, context, "$bodyContent" ) );
+
+        // used as a string
+        assertEquals( "<p>World</p>",
+                      evaluate( engine, context, "$bodyContent.trim().replace( 'Hello', 'World' )" ) );
+        assertEquals( "true 12",
+                      evaluate( engine, context,
+                                "#if( $bodyContent.contains( 'Hello' ) )true#end $bodyContent.trim().length()" ) );
+
+        sink.release();
+    }
+
+    @Test
+    public void testWriteTo()
+        throws Exception
+    {
+        final String content = "content";
+        RenderableContent renderable = new RenderableContent()
+        {
+            @Override
+            public void writeTo( Writer writer )
+                throws IOException
+            {
+                writer.write( content );
+            }
+
+            @Override
+            protected String createString()
+            {
+                return content;
+            }
+        };
+
+        StringWriter sw = new StringWriter();
+        renderable.render( null, sw );
+        assertEquals( content, sw.toString() );
+        assertEquals( content.length(), renderable.length() );
+        assertEquals( "onte", renderable.substring( 1, 5 ) );
+    }
+
+    private static String evaluate( VelocityEngine engine, VelocityContext context, String template )
+    {
+        StringWriter sw = new StringWriter();
+        engine.evaluate( context, sw, "test", template );
+        return sw.toString();
+    }
+}
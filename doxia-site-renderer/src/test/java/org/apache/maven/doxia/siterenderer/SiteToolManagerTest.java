@@ -0,0 +1,95 @@
+package org.apache.maven.doxia.siterenderer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.maven.doxia.siterenderer.SiteToolManager.SiteToolContext;
+import org.apache.velocity.tools.Scope;
+import org.apache.velocity.tools.config.EasyFactoryConfiguration;
+import org.apache.velocity.tools.generic.DateTool;
+import org.apache.velocity.tools.generic.MathTool;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SiteToolManagerTest
+{
+    @Test
+    public void testLayeredContext()
+    {
+        Map<String, Object> base = new HashMap<String, Object>();
+        base.put( "site", "base" );
+        base.put( "shared", "base" );
+
+        SiteToolContext context = (SiteToolContext) new SiteToolManager().createContext();
+        context.setBase( base );
+        context.put( "document", "overlay" );
+        context.put( "shared", "overlay" );
+
+        assertEquals( "base", context.get( "site" ) );
+        assertEquals( "overlay", context.get( "document" ) );
+        assertEquals( "overlay", context.get( "shared" ) );
+        assertTrue( context.containsKey( "site" ) );
+        assertTrue( context.keySet().contains( "site" ) );
+
+        assertEquals( "base", context.remove( "site" ) );
+        assertNull( context.get( "site" ) );
+        assertFalse( context.containsKey( "site" ) );
+
+        context.put( "site", "overlay" );
+        assertEquals( "overlay", context.get( "site" ) );
+
+        // the base is shared by every document context: never modified
+        assertEquals( "base", base.get( "site" ) );
+        assertEquals( "base", base.get( "shared" ) );
+
+        SiteToolContext other = (SiteToolContext) new SiteToolManager().createContext();
+        other.setBase( base );
+        assertEquals( "base", other.get( "shared" ) );
+        assertNull( other.get( "document" ) );
+    }
+
+    @Test
+    public void testBaseHidesTools()
+    {
+        EasyFactoryConfiguration config = new EasyFactoryConfiguration( false );
+        config.toolbox( Scope.APPLICATION ).tool( "date", DateTool.class ).tool( "math", MathTool.class );
+        SiteToolManager manager = new SiteToolManager();
+        manager.configure( config );
+
+        // like template properties, put in the base
+        Map<String, Object> base = new HashMap<String, Object>();
+        base.put( "date", "2020-02-19" );
+
+        SiteToolContext context = (SiteToolContext) manager.createContext();
+        context.setBase( base );
+
+        assertEquals( "2020-02-19", context.get( "date" ) );
+        assertTrue( context.get( "math" ) instanceof MathTool );
+
+        context.setUserCanOverwriteTools( false );
+        assertTrue( context.get( "date" ) instanceof DateTool );
+    }
+}
@@ -0,0 +1,116 @@
+package org.apache.maven.doxia.siterenderer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.StringReader;
+
+import org.apache.maven.doxia.logging.SystemStreamLog;
+import org.apache.maven.doxia.parser.ParseException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SiteXmlValidatorTest
+{
+    private static final String DTD = "<?xml version=\"1.0\"?>\n"
+        + "<!DOCTYPE doc [\n"
+        + "<!ELEMENT doc (p*)>\n"
+        + "<!ELEMENT p (#PCDATA)>\n"
+        + "]>\n";
+
+    private final SiteXmlValidator validator = new SiteXmlValidator();
+
+    @Test
+    public void testValid()
+        throws Exception
+    {
+        // the same validator is used for several documents
+        validator.validate( new StringReader( DTD + "<doc><p>Hello</p></doc>" ), new SystemStreamLog() );
+        validator.validate( new StringReader( DTD + "<doc><p>world</p><p>!</p></doc>" ), new SystemStreamLog() );
+    }
+
+    @Test
+    public void testInvalid()
+        throws Exception
+    {
+        try
+        {
+            validator.validate( new StringReader( DTD + "<doc><q>Hello</q></doc>" ), new SystemStreamLog() );
+            fail( "invalid content" );
+        }
+        catch ( ParseException e )
+        {
+            assertTrue( e.getMessage(), e.getMessage().contains( "Error validating the model" ) );
+        }
+    }
+
+    @Test
+    public void testNotWellFormed()
+        throws Exception
+    {
+        try
+        {
+            validator.validate( new StringReader( DTD + "<doc><p>Hello</doc>" ), new SystemStreamLog() );
+            fail( "not well-formed content" );
+        }
+        catch ( ParseException e )
+        {
+            assertTrue( e.getMessage(), e.getMessage().contains( "Fatal error" ) );
+        }
+    }
+
+    @Test
+    public void testReadHead()
+        throws Exception
+    {
+        StringBuilder comment = new StringBuilder( "<!-- " );
+        for ( int i = 0; i < 1000; i++ )
+        {
+            comment.append( "a long license header, with a <tag> and 'quotes'\n" );
+        }
+        comment.append( "-->\n" );
+
+        String root = "<doc xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" a='>'>";
+        String head = "<?xml version=\"1.0\"?>\n" + comment + "<?pi <doc>?>\n"
+            + "<!DOCTYPE doc [\n<!-- don't ] -->\n<!ENTITY gt2 \"&#62;]>\">\n]>\n" + root;
+
+        // the root element start tag is found after a prolog of any length
+        assertEquals( head, SiteXmlValidator.readHead( new StringReader( head + "<p>Hello</p></doc>" ) ) );
+
+        // no root element
+        assertEquals( "<?xml version=\"1.0\"?>t",
+                      SiteXmlValidator.readHead( new StringReader( "<?xml version=\"1.0\"?>text after" ) ) );
+    }
+
+    @Test
+    public void testValidAfterLongProlog()
+        throws Exception
+    {
+        StringBuilder comments = new StringBuilder();
+        for ( int i = 0; i < 1000; i++ )
+        {
+            comments.append( "<!-- comment line -->\n" );
+        }
+
+        validator.validate( new StringReader( DTD + comments + "<doc><p>Hello</p></doc>" ), new SystemStreamLog() );
+    }
+}
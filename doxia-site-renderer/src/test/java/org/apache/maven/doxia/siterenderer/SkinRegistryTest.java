@@ -0,0 +1,110 @@
+package org.apache.maven.doxia.siterenderer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SkinRegistryTest
+{
+    @Test
+    public void testSkinReadOnce()
+        throws Exception
+    {
+        File skinJar = new File( "target/skin-registry/skin.jar" );
+        FileUtils.copyFile( new File( "target/test-classes/skin.jar" ), skinJar );
+
+        SkinRegistry registry = new SkinRegistry();
+
+        SkinArchive archive = registry.get( skinJar );
+        assertTrue( archive.hasEntry( "META-INF/maven/site.vm" ) );
+        assertNotNull( archive.getChecksum() );
+        assertSame( archive, registry.get( new File( skinJar.getAbsolutePath() ) ) );
+
+        // a modified skin file is read again
+        skinJar.setLastModified( skinJar.lastModified() - 10000 );
+        SkinArchive modified = registry.get( skinJar );
+        assertNotSame( archive, modified );
+        assertEquals( archive.getChecksum(), modified.getChecksum() );
+        assertEquals( archive.getEntries().size(), modified.getEntries().size() );
+        assertSame( modified, registry.get( skinJar ) );
+
+        // the classloader of the replaced skin is closed
+        assertNull( archive.getEntryStream( "META-INF/maven/site.vm" ) );
+
+        registry.clear();
+        assertNull( modified.getEntryStream( "META-INF/maven/site.vm" ) );
+    }
+
+    @Test
+    public void testChecksum()
+        throws Exception
+    {
+        File directory = new File( "target/skin-registry" );
+        directory.mkdirs();
+
+        SkinRegistry registry = new SkinRegistry();
+        try
+        {
+            String black = registry.get( skinJar( new File( directory, "black.jar" ), "black" ) ).getChecksum();
+            String copy = registry.get( skinJar( new File( directory, "black-copy.jar" ), "black" ) ).getChecksum();
+            String white = registry.get( skinJar( new File( directory, "white.jar" ), "white" ) ).getChecksum();
+
+            // hash of the entries, not of the file
+            assertEquals( black, copy );
+            assertNotEquals( black, white );
+        }
+        finally
+        {
+            registry.clear();
+        }
+    }
+
+    private static File skinJar( File file, String color )
+        throws Exception
+    {
+        ZipOutputStream zip = new ZipOutputStream( new FileOutputStream( file ) );
+        try
+        {
+            zip.putNextEntry( new ZipEntry( "css/site.css" ) );
+            zip.write( ( "body { color: " + color + "; }" ).getBytes( "UTF-8" ) );
+            zip.closeEntry();
+        }
+        finally
+        {
+            IOUtil.close( zip );
+        }
+        return file;
+    }
+}
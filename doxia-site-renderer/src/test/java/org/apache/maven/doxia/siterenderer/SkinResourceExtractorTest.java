@@ -0,0 +1,114 @@
+package org.apache.maven.doxia.siterenderer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.concurrent.Callable;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SkinResourceExtractorTest
+{
+    @Test
+    public void testExtractMissingResources()
+        throws Exception
+    {
+        File directory = new File( "target/skin-resource-extractor" );
+        FileUtils.deleteDirectory( directory );
+        directory.mkdirs();
+
+        File skinJar = new File( directory, "skin.jar" );
+        ZipOutputStream zip = new ZipOutputStream( new FileOutputStream( skinJar ) );
+        try
+        {
+            addEntry( zip, "META-INF/maven/site.vm", "$bodyContent" );
+            addEntry( zip, "css/", null );
+            addEntry( zip, "css/site.css", "body { color: black; }" );
+            addEntry( zip, "images/logo.svg", "<svg/>" );
+            addEntry( zip, "js/site.js", "var site;" );
+        }
+        finally
+        {
+            IOUtil.close( zip );
+        }
+
+        SkinArchive skinArchive = SkinArchive.load( skinJar );
+        File outputDirectory = new File( directory, "output" );
+
+        SkinResourceExtractor extractor = new SkinResourceExtractor( skinArchive, outputDirectory );
+        assertEquals( 3, extractor.getOutdatedEntries().size() );
+        assertTrue( new File( outputDirectory, "images" ).isDirectory() );
+        extract( extractor, skinJar );
+
+        assertEquals( "body { color: black; }", FileUtils.fileRead( new File( outputDirectory, "css/site.css" ) ) );
+        assertEquals( "<svg/>", FileUtils.fileRead( new File( outputDirectory, "images/logo.svg" ) ) );
+        assertTrue( !new File( outputDirectory, "META-INF" ).exists() );
+
+        // extracted resources are skipped
+        assertEquals( 0, new SkinResourceExtractor( skinArchive, outputDirectory ).getOutdatedEntries().size() );
+
+        // existing files are never overwritten, like site resources overriding skin resources
+        FileUtils.fileWrite( new File( outputDirectory, "css/site.css" ), "body { color: purple }" );
+        new File( outputDirectory, "images/logo.svg" ).delete();
+        extractor = new SkinResourceExtractor( skinArchive, outputDirectory );
+        assertEquals( 1, extractor.getOutdatedEntries().size() );
+        extract( extractor, skinJar );
+
+        assertEquals( "body { color: purple }", FileUtils.fileRead( new File( outputDirectory, "css/site.css" ) ) );
+        assertEquals( "<svg/>", FileUtils.fileRead( new File( outputDirectory, "images/logo.svg" ) ) );
+    }
+
+    private static void extract( SkinResourceExtractor extractor, File skinJar )
+        throws Exception
+    {
+        ZipFile zipFile = new ZipFile( skinJar );
+        try
+        {
+            for ( Callable<Void> task : extractor.createTasks( zipFile, 2 ) )
+            {
+                task.call();
+            }
+        }
+        finally
+        {
+            zipFile.close();
+        }
+    }
+
+    private static void addEntry( ZipOutputStream zip, String name, String content )
+        throws Exception
+    {
+        zip.putNextEntry( new ZipEntry( name ) );
+        if ( content != null )
+        {
+            zip.write( content.getBytes( "UTF-8" ) );
+        }
+        zip.closeEntry();
+    }
+}
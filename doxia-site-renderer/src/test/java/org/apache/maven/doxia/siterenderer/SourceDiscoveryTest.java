@@ -0,0 +1,108 @@
+package org.apache.maven.doxia.siterenderer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.maven.doxia.parser.module.ParserModule;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SourceDiscoveryTest
+{
+    @Test
+    public void testDiscover()
+        throws Exception
+    {
+        File siteDirectory = new File( "target/source-discovery" );
+        FileUtils.deleteDirectory( siteDirectory );
+
+        touch( siteDirectory, "apt/index.apt" );
+        touch( siteDirectory, "apt/sub/UPPER.APT" );
+        touch( siteDirectory, "apt/velocity.apt.vm" );
+        touch( siteDirectory, "apt/other.xml" );
+        touch( siteDirectory, "apt/drafts/draft.apt" );
+        touch( siteDirectory, "apt/.svn/entries.apt" );
+        touch( siteDirectory, "markdown/readme.md" );
+        touch( siteDirectory, "markdown/readme.markdown.vm" );
+        touch( siteDirectory, "resources/image.apt" );
+
+        List<ParserModule> modules =
+            Arrays.asList( module( "apt", "apt", "apt" ), module( "markdown", "markdown", "md", "markdown" ),
+                           module( "xdoc", "xdoc", "xml" ) );
+
+        List<SourceDiscovery.ModuleSources> discovered =
+            new SourceDiscovery( siteDirectory, modules,
+                                 Collections.singletonMap( "apt", "drafts/" ) ).discover();
+
+        assertEquals( 3, discovered.size() );
+
+        SourceDiscovery.ModuleSources apt = discovered.get( 0 );
+        List<String> aptDocuments = apt.getDocuments( "apt" );
+        Collections.sort( aptDocuments.subList( 0, 2 ) );
+        assertEquals( Arrays.asList( "index.apt", path( "sub/UPPER.APT" ), "velocity.apt.vm" ), aptDocuments );
+
+        SourceDiscovery.ModuleSources markdown = discovered.get( 1 );
+        assertEquals( Collections.singletonList( "readme.md" ), markdown.getDocuments( "md" ) );
+        assertEquals( Collections.singletonList( "readme.markdown.vm" ), markdown.getDocuments( "markdown" ) );
+
+        assertEquals( Collections.<String>emptyList(), discovered.get( 2 ).getDocuments( "xml" ) );
+    }
+
+    private static String path( String path )
+    {
+        return path.replace( '/', File.separatorChar );
+    }
+
+    private static void touch( File directory, String path )
+        throws Exception
+    {
+        File file = new File( directory, path );
+        file.getParentFile().mkdirs();
+        file.createNewFile();
+    }
+
+    private static ParserModule module( final String parserId, final String sourceDirectory,
+                                        final String... extensions )
+    {
+        return new ParserModule()
+        {
+            public String getSourceDirectory()
+            {
+                return sourceDirectory;
+            }
+
+            public String[] getExtensions()
+            {
+                return extensions;
+            }
+
+            public String getParserId()
+            {
+                return parserId;
+            }
+        };
+    }
+}
@@ -0,0 +1,122 @@
+package org.apache.maven.doxia.siterenderer.sink;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.StringWriter;
+
+import org.apache.maven.doxia.siterenderer.RenderingContext;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class ChunkedWriterTest
+{
+    @Test
+    public void testChunks()
+        throws Exception
+    {
+        StringBuilder expected = new StringBuilder();
+        ChunkedWriter writer = new ChunkedWriter( 0 );
+        for ( int i = 0; i < 20000; i++ )
+        {
+            String text = "line " + i + '\n';
+            expected.append( text );
+            if ( i % 3 == 0 )
+            {
+                writer.write( text );
+            }
+            else if ( i % 3 == 1 )
+            {
+                writer.write( text.toCharArray() );
+            }
+            else
+            {
+                for ( char c : text.toCharArray() )
+                {
+                    writer.write( c );
+                }
+            }
+        }
+
+        assertEquals( expected.length(), writer.length() );
+        assertEquals( expected.toString(), writer.toString() );
+
+        StringWriter out = new StringWriter();
+        writer.writeTo( out );
+        assertEquals( expected.toString(), out.toString() );
+
+        // chunks are merged into a single chunk, big enough for the same content
+        int capacity = writer.capacity();
+        writer.reset();
+        assertEquals( 0, writer.length() );
+        assertEquals( "", writer.toString() );
+        assertEquals( capacity, writer.capacity() );
+
+        writer.write( expected.toString() );
+        assertEquals( capacity, writer.capacity() );
+        assertEquals( expected.toString(), writer.toString() );
+    }
+
+    @Test
+    public void testSinkBuffersReuse()
+    {
+        SinkBuffers buffers = SinkBuffers.acquire();
+        buffers.release();
+
+        SiteRendererSink sink = newSink( "first" );
+        assertEquals( "<p>first</p>", sink.getBody().trim() );
+        sink.release();
+
+        // content is still available once released, but not writable any more
+        assertEquals( "<p>first</p>", sink.getBody().trim() );
+        assertEquals( "<p>first</p>", sink.getBodyContent().toString().trim() );
+        try
+        {
+            sink.text( "more" );
+            sink.flush();
+            fail( "content should not be writable once released" );
+        }
+        catch ( IllegalStateException e )
+        {
+            // expected
+        }
+
+        // released buffers are reused by the next sink of the same thread
+        sink = newSink( "second" );
+        assertEquals( "<p>second</p>", sink.getBody().trim() );
+        sink.release();
+
+        assertSame( buffers, SinkBuffers.acquire() );
+        buffers.release();
+    }
+
+    private static SiteRendererSink newSink( String text )
+    {
+        SiteRendererSink sink =
+            new SiteRendererSink( new RenderingContext( new File( "target" ).getAbsoluteFile(), "index.apt" ) );
+        sink.paragraph();
+        sink.text( text );
+        sink.paragraph_();
+        return sink;
+    }
+}
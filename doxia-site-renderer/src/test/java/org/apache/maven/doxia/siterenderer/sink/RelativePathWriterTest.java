@@ -0,0 +1,99 @@
+package org.apache.maven.doxia.siterenderer.sink;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import org.apache.maven.doxia.siterenderer.RenderingContext;
+import org.codehaus.plexus.util.StringUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class RelativePathWriterTest
+{
+    private static final String PATH = "../..";
+
+    @Test
+    public void testReplace()
+        throws Exception
+    {
+        assertReplaced( "Hello world" );
+        assertReplaced( "<a href=\"$relativePath/index.html\">" );
+        assertReplaced( "$relativePath$relativePath" );
+        assertReplaced( "$$relative$relativePath $relativ$" );
+        assertReplaced( "$relativePat" );
+    }
+
+    @Test
+    public void testTokenSplitAcrossWrites()
+        throws Exception
+    {
+        StringWriter sw = new StringWriter();
+        Writer writer = new RelativePathWriter( sw, PATH );
+        writer.write( "a $rel" );
+        writer.flush();
+        writer.write( "ative".toCharArray() );
+        writer.write( 'P' );
+        writer.write( "ath b $relative" );
+        assertEquals( "$relative", ( (RelativePathWriter) writer ).getPending() );
+        writer.close();
+
+        assertEquals( "a ../.. b $relative", sw.toString() );
+    }
+
+    @Test
+    public void testSiteRendererSink()
+    {
+        SiteRendererSink sink =
+            new SiteRendererSink( new RenderingContext( new File( "target" ).getAbsoluteFile(), "sub/index.apt" ) );
+        sink.rawText( "<a href=\"$relative" );
+        sink.rawText( "Path/index.html\">$relative" );
+
+        assertEquals( "<a href=\"../index.html\">$relative", sink.getBody() );
+    }
+
+    private void assertReplaced( String text )
+        throws IOException
+    {
+        String expected = StringUtils.replace( text, RelativePathWriter.TOKEN, PATH );
+
+        // whole string
+        StringWriter sw = new StringWriter();
+        Writer writer = new RelativePathWriter( sw, PATH );
+        writer.write( text );
+        writer.close();
+        assertEquals( expected, sw.toString() );
+
+        // every possible split in 2 writes
+        for ( int i = 0; i <= text.length(); i++ )
+        {
+            sw = new StringWriter();
+            writer = new RelativePathWriter( sw, PATH );
+            writer.write( text.substring( 0, i ) );
+            writer.write( text.substring( i ).toCharArray() );
+            writer.close();
+            assertEquals( expected, sw.toString() );
+        }
+    }
+}